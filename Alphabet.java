@@ -0,0 +1,75 @@
+import java.util.Arrays;
+
+/***************************************************************************
+ * Maps each valid character to a dense child index (in sorted order)
+ *
+ *  lookup : int array (indexed by char, up to the largest valid char)
+ *   ___ ___ ___     ___     ___     ___     ___
+ *  |-1 |-1 |-1 |...| 0 |...| 1 |...| 2 |...| 3 |
+ *  |___|___|___|   |___|   |___|   |___|   |___|
+ *                   'A'     'C'     'G'     'T'
+ *
+ * Built once per map so nothing gets compiled per call (unlike regexes)
+ ***************************************************************************/
+public final class Alphabet {
+
+	private final char[] chars; // sorted, index -> char
+	private final int[] lookup; // char -> index, or -1 if not valid
+
+	public Alphabet(String validChars) {
+		if (validChars == null) throw new IllegalArgumentException("null alphabet");
+
+		chars = validChars.toCharArray();
+		Arrays.sort(chars);
+		for (int i = 1; i < chars.length; i++)
+			if (chars[i] == chars[i - 1])
+				throw new IllegalArgumentException("repeated characters");
+
+		lookup = new int[chars.length == 0 ? 0 : chars[chars.length - 1] + 1];
+		Arrays.fill(lookup, -1);
+		for (int i = 0; i < chars.length; i++)
+			lookup[chars[i]] = i;
+	}
+
+	/*
+	 * Number of valid characters (also the fan-out of a trie node)
+	 */
+	public int size() { return chars.length; }
+
+	/*
+	 * The character with the given index
+	 */
+	public char charAt(int index) { return chars[index]; }
+
+	/*
+	 * The valid characters in sorted (index) order
+	 */
+	public String chars() { return new String(chars); }
+
+	/*
+	 * Index of the character, throw MalformedKeyException if it is not valid
+	 */
+	public int index(char ch) {
+		int i = ch < lookup.length ? lookup[ch] : -1;
+		if (i < 0) throw new MalformedKeyException();
+		return i;
+	}
+
+	public boolean isValid(char ch) { return ch < lookup.length && lookup[ch] >= 0; }
+
+	/*
+	 * if the key is null, throw IllegalArgumentException
+	 * if the key contains any non-valid character, throw MalformedKeyException
+	 */
+	public void verify(String key) { verify(key, 0); }
+
+	/*
+	 * Same as verify(key) but only checks characters from the given offset,
+	 * for callers that have already validated the start while walking
+	 */
+	public void verify(String key, int from) {
+		if (key == null) throw new IllegalArgumentException("null key");
+		for (int i = from; i < key.length(); i++)
+			index(key.charAt(i));
+	}
+}
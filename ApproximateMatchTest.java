@@ -0,0 +1,113 @@
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class ApproximateMatchTest {
+	
+	private static int hamming(String a, String b) {
+		if (a.length() != b.length())
+			return Integer.MAX_VALUE;
+		int d = 0;
+		for (int i = 0; i < a.length(); i++)
+			if (a.charAt(i) != b.charAt(i))
+				d++;
+		return d;
+	}
+	
+	private static int levenshtein(String a, String b) {
+		int[] prev = new int[b.length() + 1], row = new int[b.length() + 1];
+		for (int j = 0; j <= b.length(); j++)
+			prev[j] = j;
+		for (int i = 1; i <= a.length(); i++) {
+			row[0] = i;
+			for (int j = 1; j <= b.length(); j++)
+				row[j] = Math.min(prev[j - 1] + (a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1), Math.min(prev[j], row[j - 1]) + 1);
+			int[] swap = prev;
+			prev = row;
+			row = swap;
+		}
+		return prev[b.length()];
+	}
+	
+	@Test
+	public void testExamples() {
+		PrefixTree t = new PrefixTree("ACTG");
+		for (String key : new String[] { "", "GATTACA", "GATTACC", "GATACA", "CATTACA", "GATTACAT", "TTT" })
+			t.put(key, key);
+		
+		assertEquals(Arrays.asList("GATTACA"), t.getKeysWithinDistance("GATTACA", 0, PrefixTree.Metric.HAMMING));
+		assertEquals(Arrays.asList("CATTACA", "GATTACA", "GATTACC"), t.getKeysWithinDistance("GATTACA", 1, PrefixTree.Metric.HAMMING));
+		assertEquals(Arrays.asList("CATTACA", "GATACA", "GATTACA", "GATTACAT", "GATTACC"),
+				t.getKeysWithinDistance("GATTACA", 1, PrefixTree.Metric.LEVENSHTEIN));
+		assertEquals(Arrays.asList(""), t.getKeysWithinDistance("", 0, PrefixTree.Metric.LEVENSHTEIN));
+		assertEquals(Arrays.asList("", "TTT"), t.getKeysWithinDistance("T", 2, PrefixTree.Metric.LEVENSHTEIN));
+	}
+	
+	@Test
+	public void testSameAsBruteForce() {
+		PrefixTree t = new PrefixTree("ACTG");
+		Random RNG = new Random(23);
+		for (int i = 0; i < 3000; i++)
+			t.put(randomKey(RNG, 12), "v");
+		List<String> all = t.getKeysMatchingPrefix("");
+		
+		for (int q = 0; q < 40; q++) {
+			String query = randomKey(RNG, 12);
+			for (int k = 0; k <= 3; k++) {
+				List<String> hamming = new ArrayList<>(), levenshtein = new ArrayList<>();
+				for (String key : all) {
+					if (hamming(key, query) <= k)
+						hamming.add(key);
+					if (levenshtein(key, query) <= k)
+						levenshtein.add(key);
+				}
+				assertEquals(hamming, t.getKeysWithinDistance(query, k, PrefixTree.Metric.HAMMING));
+				assertEquals(levenshtein, t.getKeysWithinDistance(query, k, PrefixTree.Metric.LEVENSHTEIN));
+			}
+		}
+	}
+	
+	@Test
+	public void testHugeDistance() {
+		PrefixTree t = new PrefixTree("ACTG");
+		for (String key : new String[] { "", "GAT", "GATTACA", "CATTACA", "TTT" })
+			t.put(key, key);
+		
+		assertEquals(Arrays.asList("CATTACA", "GATTACA"), t.getKeysWithinDistance("GATTACA", Integer.MAX_VALUE, PrefixTree.Metric.HAMMING));
+		assertEquals(t.getKeysMatchingPrefix(""), t.getKeysWithinDistance("GATTACA", Integer.MAX_VALUE, PrefixTree.Metric.LEVENSHTEIN));
+		assertEquals(t.getKeysMatchingPrefix(""), t.getKeysWithinDistance("", Integer.MAX_VALUE, PrefixTree.Metric.LEVENSHTEIN));
+		assertEquals(Arrays.asList(""), t.getKeysWithinDistance("", Integer.MAX_VALUE, PrefixTree.Metric.HAMMING));
+	}
+	
+	@Test
+	public void testDeepKeys() {
+		PrefixTree t = new PrefixTree("ACTG");
+		char[] deep = new char[1000];
+		Arrays.fill(deep, 'A');
+		String key = new String(deep);
+		t.put(key, "deep");
+		assertEquals(Arrays.asList(key), t.getKeysWithinDistance(key, 1, PrefixTree.Metric.HAMMING));
+		assertEquals(Arrays.asList(key), t.getKeysWithinDistance(key.substring(1), 1, PrefixTree.Metric.LEVENSHTEIN));
+	}
+	
+	private static String randomKey(Random RNG, int maxLength) {
+		char[] key = new char[RNG.nextInt(maxLength)];
+		for (int j = 0; j < key.length; j++)
+			key[j] = "ACGT".charAt(RNG.nextInt(4));
+		return new String(key);
+	}
+	
+	@Test(expected = MalformedKeyException.class)
+	public void testMalformedQuery() {
+		new PrefixTree("ACTG").getKeysWithinDistance("CAX", 1, PrefixTree.Metric.HAMMING);
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeDistance() {
+		new PrefixTree("ACTG").getKeysWithinDistance("CAT", -1, PrefixTree.Metric.LEVENSHTEIN);
+	}
+}
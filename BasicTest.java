@@ -8,9 +8,14 @@ import java.util.List;
 
 public class BasicTest {
 	
+	/*
+	 * Subclasses run the same tests against other implementations
+	 */
+	protected PrefixMap create() { return new PrefixTree("ACTG"); }
+	
 	@Test
 	public void testPut() {
-		PrefixMap t = new PrefixTree("ACTG");
+		PrefixMap t = create();
 		
 		assertNull(t.put("ACTG", "foo"));
 		assertEquals("foo", t.put("ACTG", "bar"));
@@ -20,7 +25,7 @@ public class BasicTest {
 	
 	@Test
 	public void testSizeAndKeySum() {
-		PrefixMap t = new PrefixTree("ACTG");
+		PrefixMap t = create();
 		assertEquals(0, t.sumKeyLengths());
 		assertEquals(0, t.size());
 		
@@ -52,7 +57,7 @@ public class BasicTest {
 	
 	@Test
 	public void testRemove() {
-		PrefixMap t = new PrefixTree("ACTG");
+		PrefixMap t = create();
 		assertNull(t.put("ACTG", "foo"));
 		assertNull(t.put("ATCC", "bar"));
 		assertNull(t.put("ACACACACACACTGGT", "baz"));
@@ -71,7 +76,7 @@ public class BasicTest {
 	
 	@Test
 	public void testRemovePrefix() {
-		PrefixMap t = new PrefixTree("ACTG");
+		PrefixMap t = create();
 		
 		assertNull(t.put("ACCACCACCACC", "foo"));
 		assertNull(t.put("ACC", "bar"));
@@ -85,7 +90,7 @@ public class BasicTest {
 	
 	@Test
 	public void testCountKeysMatchingPrefix() {
-		PrefixMap t = new PrefixTree("ACTG");
+		PrefixMap t = create();
 		assertEquals(0, t.countKeysMatchingPrefix("ACA"));
 		
 		assertNull(t.put("ACTG", "foo"));
@@ -104,7 +109,7 @@ public class BasicTest {
 
 	@Test
 	public void testGetKeysMatchingPrefix() {
-		PrefixMap t = new PrefixTree("ACTG");
+		PrefixMap t = create();
 		assertEquals(Arrays.asList(), t.getKeysMatchingPrefix("ACA"));
 		
 		assertNull(t.put("ACTG", "foo"));
@@ -123,7 +128,7 @@ public class BasicTest {
 
 	@Test
 	public void testCountPrefixes() {
-		PrefixMap t = new PrefixTree("ACTG");
+		PrefixMap t = create();
 		assertEquals(0, t.countPrefixes());
 		
 		//----------------1234
@@ -147,7 +152,7 @@ public class BasicTest {
 	
 	@Test
 	public void testSelfPrefix() {
-		PrefixMap t = new PrefixTree("ACTG");
+		PrefixMap t = create();
 		assertNull(t.put("ACTCA", "a palindrome emor dni lap a"));
 		assertNull(t.put("ACTCACTCA", "reversible el bis r ever"));
 		
@@ -159,7 +164,7 @@ public class BasicTest {
 	@Test
 	public void testEmptyString() {
 		
-		PrefixMap t = new PrefixTree("ACTG");
+		PrefixMap t = create();
 		
 		assertNull(t.put("", "..."));
 		assertNull(t.put("GATTACA", "who cares"));
@@ -174,8 +179,8 @@ public class BasicTest {
 	
 	@Test
 	public void testScope() {
-		PrefixMap frankenstiens = new PrefixTree("ACTG");
-		PrefixMap einstien = new PrefixTree("ACTG");
+		PrefixMap frankenstiens = create();
+		PrefixMap einstien = create();
 		
 		assertNull(frankenstiens.put("A"+"CAT"+"ATTACCA", "is a monster"));
 		assertEquals(1, frankenstiens.size());
@@ -184,7 +189,7 @@ public class BasicTest {
 	
 	@Test
 	public void testListNotModified() {
-		PrefixMap t = new PrefixTree("ACTG");
+		PrefixMap t = create();
 		
 		assertNull(t.put("ACTGATC", "goo"));
 		
@@ -198,7 +203,7 @@ public class BasicTest {
 	
 	@Test
 	public void testSizeEquivalence() {
-		PrefixMap t = new PrefixTree("ACTG");
+		PrefixMap t = create();
 		
 		assertNull(t.put("", "fat cats sat in hats on mats"));
 		assertNull(t.put("ATACAT", "a hat!"));
@@ -209,7 +214,7 @@ public class BasicTest {
 	
 	@Test
 	public void testListOrdered() {
-		PrefixMap t = new PrefixTree("ACTG");
+		PrefixMap t = create();
 		
 		List<String> keys = Arrays.asList("", "TACC", "GCC", "CAT", "AGG", "C");
 		for (String key : keys)
@@ -229,7 +234,7 @@ public class BasicTest {
 		
 	@Test
 	public void testInvalidInput() {
-		PrefixMap t = new PrefixTree("ACTG");
+		PrefixMap t = create();
 		String e = "expected ",
 				m = "MalformedKeyException",
 				i = "IllegalArgumentException";
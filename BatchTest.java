@@ -0,0 +1,102 @@
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+public class BatchTest {
+	
+	private static String randomKey(Random RNG) {
+		char[] key = new char[RNG.nextInt(10)];
+		for (int j = 0; j < key.length; j++)
+			key[j] = "ACGT".charAt(RNG.nextInt(4));
+		return new String(key);
+	}
+	
+	private static void assertSame(PrefixTree expected, PrefixTree actual) {
+		assertEquals(expected.size(), actual.size());
+		assertEquals(expected.sumKeyLengths(), actual.sumKeyLengths());
+		assertEquals(expected.countPrefixes(), actual.countPrefixes());
+		for (String prefix : new String[] { "", "A", "CG", "TTT" })
+			assertEquals(expected.countKeysMatchingPrefix(prefix), actual.countKeysMatchingPrefix(prefix));
+		assertEquals(expected.getKeysMatchingPrefix(""), actual.getKeysMatchingPrefix(""));
+		for (String key : expected.getKeysMatchingPrefix(""))
+			assertEquals(expected.get(key), actual.get(key));
+	}
+	
+	@Test
+	public void testSameAsOneAtATime() {
+		Random RNG = new Random(5);
+		PrefixTree expected = new PrefixTree("ACGT"), actual = new PrefixTree("ACGT");
+		
+		for (int round = 0; round < 20; round++) {
+			Map<String, String> puts = new HashMap<>();
+			for (int i = 0; i < 300; i++)
+				puts.put(randomKey(RNG), "value " + round + " " + i);
+			for (Map.Entry<String, String> entry : puts.entrySet())
+				expected.put(entry.getKey(), entry.getValue());
+			actual.putAll(puts);
+			assertSame(expected, actual);
+			
+			List<String> keys = new ArrayList<>(); // duplicates and missing keys included
+			for (int i = 0; i < 300; i++)
+				keys.add(randomKey(RNG));
+			List<String> values = new ArrayList<>();
+			for (String key : keys)
+				values.add(expected.get(key));
+			assertEquals(values, actual.getAll(keys));
+			
+			values.clear();
+			for (String key : keys)
+				values.add(expected.remove(key));
+			assertEquals(values, actual.removeAll(keys));
+			assertSame(expected, actual);
+		}
+	}
+	
+	@Test
+	public void testInputOrder() {
+		PrefixTree t = new PrefixTree("ACGT");
+		t.put("GAT", "1");
+		t.put("CAT", "2");
+		t.put("GATTACA", "3");
+		assertEquals(Arrays.asList("3", null, "1", "2", "1"), t.getAll(Arrays.asList("GATTACA", "TAG", "GAT", "CAT", "GAT")));
+		assertEquals(Arrays.asList("3", "1", null), t.removeAll(Arrays.asList("GATTACA", "GAT", "GAT")));
+		assertEquals(1, t.size());
+		assertEquals(3, t.countPrefixes());
+	}
+	
+	@Test
+	public void testBadKeyChangesNothing() {
+		PrefixTree t = new PrefixTree("ACGT");
+		t.put("CAT", "meow");
+		
+		Map<String, String> puts = new HashMap<>();
+		puts.put("GAT", "tag");
+		puts.put("DOG", "woof");
+		try {
+			t.putAll(puts);
+			fail();
+		} catch (MalformedKeyException e) {}
+		try {
+			t.removeAll(Arrays.asList("CAT", null));
+			fail();
+		} catch (IllegalArgumentException e) {}
+		
+		assertEquals(1, t.size());
+		assertEquals(3, t.countPrefixes());
+		assertEquals("meow", t.get("CAT"));
+		assertNull(t.get("GAT"));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testNullValue() {
+		Map<String, String> puts = new HashMap<>();
+		puts.put("GAT", null);
+		new PrefixTree("ACGT").putAll(puts);
+	}
+}
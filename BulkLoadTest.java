@@ -0,0 +1,119 @@
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.util.AbstractMap.SimpleEntry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+public class BulkLoadTest {
+	
+	private static List<Map.Entry<String, String>> randomEntries(int n, Random RNG) {
+		List<Map.Entry<String, String>> entries = new ArrayList<>();
+		for (int i = 0; i < n; i++) {
+			char[] key = new char[RNG.nextInt(10)];
+			for (int j = 0; j < key.length; j++)
+				key[j] = "ACGT".charAt(RNG.nextInt(4));
+			entries.add(new SimpleEntry<>(new String(key), "value " + i)); // plenty of duplicates
+		}
+		return entries;
+	}
+	
+	private static PrefixTree putAll(List<Map.Entry<String, String>> entries) {
+		PrefixTree t = new PrefixTree("ACGT");
+		for (Map.Entry<String, String> entry : entries)
+			t.put(entry.getKey(), entry.getValue());
+		return t;
+	}
+	
+	private static void assertSame(PrefixTree expected, PrefixTree actual) {
+		assertEquals(expected.size(), actual.size());
+		assertEquals(expected.sumKeyLengths(), actual.sumKeyLengths());
+		assertEquals(expected.countPrefixes(), actual.countPrefixes());
+		for (String prefix : new String[] { "", "A", "CG", "TTT", "GATTACA" }) {
+			assertEquals(expected.countKeysMatchingPrefix(prefix), actual.countKeysMatchingPrefix(prefix));
+			assertEquals(expected.getKeysMatchingPrefix(prefix), actual.getKeysMatchingPrefix(prefix));
+		}
+		for (String key : expected.getKeysMatchingPrefix(""))
+			assertEquals(expected.get(key), actual.get(key));
+	}
+	
+	@Test
+	public void testUnsorted() {
+		List<Map.Entry<String, String>> entries = randomEntries(5000, new Random(1));
+		assertSame(putAll(entries), PrefixTree.build("ACGT", entries));
+	}
+	
+	@Test
+	public void testSorted() {
+		List<Map.Entry<String, String>> entries = randomEntries(5000, new Random(2));
+		entries.sort(Map.Entry.comparingByKey());
+		assertSame(putAll(entries), PrefixTree.build("ACGT", entries));
+		assertSame(putAll(entries), PrefixTree.build("ACGT", entries.stream()));
+	}
+	
+	@Test
+	public void testSortedFastPath() {
+		List<Map.Entry<String, String>> entries = randomEntries(5000, new Random(5)); // "" and duplicates too
+		entries.sort(Map.Entry.comparingByKey());
+		PrefixTree t = new PrefixTree("ACGT");
+		PrefixTree.Loader loader = new PrefixTree.Loader(t, t.root(), 0, true);
+		for (Map.Entry<String, String> entry : entries)
+			loader.add(entry.getKey(), entry.getValue());
+		assertTrue(loader.sorted());
+		loader.add("A", "x");
+		assertFalse(loader.sorted());
+		loader.finish();
+		
+		// a parallel partition, its first key can be its own first character
+		PrefixTree u = new PrefixTree("ACGT");
+		loader = new PrefixTree.Loader(u, u.new Node(u.root(), 'G'), 1, true);
+		for (String key : new String[] { "G", "G", "GA", "GAT", "GAT", "GC" })
+			loader.add(key, key);
+		assertTrue(loader.sorted());
+		loader.add("GA", "again");
+		assertFalse(loader.sorted());
+	}
+	
+	@Test
+	public void testParallelStream() {
+		List<Map.Entry<String, String>> entries = randomEntries(20000, new Random(3));
+		assertSame(putAll(entries), PrefixTree.build("ACGT", entries.parallelStream()));
+	}
+	
+	@Test
+	public void testStillMutable() {
+		List<Map.Entry<String, String>> entries = randomEntries(2000, new Random(4));
+		PrefixTree expected = putAll(entries), actual = PrefixTree.build("ACGT", entries.parallelStream());
+		for (Map.Entry<String, String> entry : entries.subList(0, 1000)) {
+			assertEquals(expected.remove(entry.getKey()), actual.remove(entry.getKey()));
+			assertEquals(expected.put(entry.getKey() + "A", "x"), actual.put(entry.getKey() + "A", "x"));
+		}
+		assertSame(expected, actual);
+	}
+	
+	@Test
+	public void testEmpty() {
+		PrefixTree t = PrefixTree.build("ACGT", Collections.<Map.Entry<String, String>>emptyList());
+		assertTrue(t.isEmpty());
+		assertEquals(0, t.countPrefixes());
+	}
+	
+	@Test(expected = MalformedKeyException.class)
+	public void testMalformedKey() {
+		PrefixTree.build("ACGT", Arrays.asList(new SimpleEntry<>("CAT", "meow"), new SimpleEntry<>("DOG", "woof")));
+	}
+	
+	@Test(expected = MalformedKeyException.class)
+	public void testMalformedKeyParallel() {
+		PrefixTree.build("ACGT", Arrays.asList(new SimpleEntry<>("CAT", "meow"), new SimpleEntry<>("DOG", "woof")).parallelStream());
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testNullKey() {
+		PrefixTree.build("ACGT", Arrays.asList(new SimpleEntry<>("CAT", "meow"), new SimpleEntry<String, String>(null, "null")));
+	}
+}
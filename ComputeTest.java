@@ -0,0 +1,182 @@
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+public class ComputeTest {
+	
+	private static String randomKey(Random RNG) {
+		char[] key = new char[RNG.nextInt(8)];
+		for (int j = 0; j < key.length; j++)
+			key[j] = "ACGT".charAt(RNG.nextInt(4));
+		return new String(key);
+	}
+	/*
+	 * Same contents and the same counters as a tree built with plain puts
+	 */
+	private static void assertConsistent(Map<String, String> expected, PrefixMap actual) {
+		PrefixTree fresh = new PrefixTree("ACGT");
+		for (Map.Entry<String, String> e : expected.entrySet())
+			fresh.put(e.getKey(), e.getValue());
+		assertEquals(fresh.size(), actual.size());
+		assertEquals(fresh.sumKeyLengths(), actual.sumKeyLengths());
+		assertEquals(fresh.countPrefixes(), actual.countPrefixes());
+		assertEquals(fresh.getKeysMatchingPrefix(""), actual.getKeysMatchingPrefix(""));
+		for (String key : expected.keySet())
+			assertEquals(expected.get(key), actual.get(key));
+	}
+	
+	@Test
+	public void testSemantics() {
+		PrefixTree t = new PrefixTree("ACGT");
+		assertNull(t.putIfAbsent("GAT", "1"));
+		assertEquals("1", t.putIfAbsent("GAT", "2"));
+		assertEquals("1", t.computeIfAbsent("GAT", k -> "3"));
+		assertNull(t.computeIfAbsent("GATTACA", k -> null));
+		assertEquals(3, t.countPrefixes()); // nothing was made for it
+		assertEquals("7", t.computeIfAbsent("GATTACA", k -> Integer.toString(k.length())));
+		
+		assertEquals("17", t.merge("GATTACA", "10", (a, b) -> Integer.toString(Integer.parseInt(a) + Integer.parseInt(b))));
+		assertEquals("x", t.merge("CAT", "x", (a, b) -> { throw new AssertionError(); }));
+		assertNull(t.merge("CAT", "y", (a, b) -> null));
+		assertNull(t.get("CAT"));
+		
+		assertNull(t.compute("GATTACA", (k, v) -> null)); // prunes back to GAT
+		assertEquals(3, t.countPrefixes());
+		assertEquals(1, t.size());
+		assertEquals(3, t.sumKeyLengths());
+		assertEquals("1!", t.compute("GAT", (k, v) -> v + "!"));
+		assertEquals("new", t.compute("", (k, v) -> v == null ? "new" : v));
+		assertEquals(2, t.size());
+	}
+	
+	@Test
+	public void testErrors() {
+		PrefixTree t = new PrefixTree("ACGT");
+		try {
+			t.compute("GAX", (k, v) -> "x");
+			fail();
+		} catch (MalformedKeyException e) {}
+		try {
+			t.merge(null, "x", (a, b) -> a);
+			fail();
+		} catch (IllegalArgumentException e) {}
+		try {
+			t.putIfAbsent("GAT", null);
+			fail();
+		} catch (IllegalArgumentException e) {}
+		try {
+			t.compute("GAT", null);
+			fail();
+		} catch (IllegalArgumentException e) {}
+		try {
+			t.compute("GAT", (k, v) -> { throw new IllegalStateException(); });
+			fail();
+		} catch (IllegalStateException e) {}
+		assertTrue(t.isEmpty());
+		assertEquals(0, t.countPrefixes());
+
+		ConcurrentPrefixTree c = new ConcurrentPrefixTree("ACGT");
+		try {
+			c.compute("GAX", (k, v) -> "x");
+			fail();
+		} catch (MalformedKeyException e) {}
+		try {
+			c.computeIfAbsent("ACGTACGT", k -> { throw new IllegalStateException(); });
+			fail();
+		} catch (IllegalStateException e) {}
+		try {
+			c.merge("ACGA", "x", (a, b) -> { throw new IllegalStateException(); });
+			c.merge("ACGA", "y", (a, b) -> { throw new IllegalStateException(); });
+			fail();
+		} catch (IllegalStateException e) {}
+		assertEquals("x", c.get("ACGA")); // a key that has a value keeps it
+		c.remove("ACGA");
+		assertTrue(c.isEmpty());
+		assertEquals(0, c.countPrefixes());
+	}
+	
+	@Test
+	public void testRandom() {
+		Random RNG = new Random(11);
+		for (PrefixTree t : new PrefixTree[] { new PrefixTree("ACGT"), new SuffixIndexedPrefixTree("ACGT") }) {
+			Map<String, String> checker = new HashMap<>();
+			ConcurrentPrefixTree c = new ConcurrentPrefixTree("ACGT");
+			for (int i = 0; i < 20000; i++) {
+				String key = randomKey(RNG), value = Integer.toString(RNG.nextInt(3));
+				switch (RNG.nextInt(4)) {
+				case 0:
+					assertEquals(checker.putIfAbsent(key, value), t.putIfAbsent(key, value));
+					c.putIfAbsent(key, value);
+					break;
+				case 1:
+					assertEquals(checker.computeIfAbsent(key, k -> value.equals("0") ? null : value),
+							t.computeIfAbsent(key, k -> value.equals("0") ? null : value));
+					c.computeIfAbsent(key, k -> value.equals("0") ? null : value);
+					break;
+				case 2:
+					assertEquals(checker.compute(key, (k, v) -> value.equals(v) ? null : value),
+							t.compute(key, (k, v) -> value.equals(v) ? null : value));
+					c.compute(key, (k, v) -> value.equals(v) ? null : value);
+					break;
+				default:
+					assertEquals(checker.merge(key, value, (a, b) -> a.equals(b) ? null : a + b),
+							t.merge(key, value, (a, b) -> a.equals(b) ? null : a + b));
+					c.merge(key, value, (a, b) -> a.equals(b) ? null : a + b);
+				}
+			}
+			assertConsistent(checker, t);
+			assertConsistent(checker, c);
+		}
+		SuffixIndexedPrefixTree s = new SuffixIndexedPrefixTree("ACGT");
+		s.merge("GATTACA", "1", (a, b) -> a + b);
+		s.compute("ATTA", (k, v) -> "2");
+		assertEquals(2, s.getKeysContaining("TTA").size());
+		s.compute("GATTACA", (k, v) -> null);
+		assertEquals(1, s.getKeysContaining("TTA").size());
+	}
+	
+	@Test
+	public void testConcurrentMerge() throws InterruptedException {
+		ConcurrentPrefixTree t = new ConcurrentPrefixTree("ACGT");
+		String[] kmers = { "AAA", "AAC", "ACG", "GAT", "GATT", "T" };
+		List<Thread> threads = new ArrayList<>();
+		for (int n = 0; n < 8; n++) {
+			Thread thread = new Thread(() -> {
+				for (int i = 0; i < 5000; i++)
+					t.merge(kmers[i % kmers.length], "1", (a, b) -> Integer.toString(Integer.parseInt(a) + 1));
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads)
+			thread.join();
+		
+		int total = 0;
+		for (String kmer : kmers)
+			total += Integer.parseInt(t.get(kmer));
+		assertEquals(8 * 5000, total);
+		assertEquals(kmers.length, t.size());
+	}
+	
+	@Test
+	public void testIncrement() {
+		IntPrefixMap m = new IntPrefixMap("ACGT", -1);
+		assertEquals(5, m.increment("GAT", 5));
+		assertEquals(3, m.increment("GAT", -2));
+		assertEquals(1, m.increment("GATTACA", 1));
+		assertEquals(2, m.size());
+		assertEquals(7, m.countPrefixes());
+		assertEquals(10, m.sumKeyLengths());
+		assertEquals(-1, m.get("GATT"));
+		try {
+			m.increment("GAX", 1);
+			fail();
+		} catch (MalformedKeyException e) {}
+		assertEquals(7, m.countPrefixes());
+	}
+}
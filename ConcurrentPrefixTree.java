@@ -0,0 +1,330 @@
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/******************************************************************************
+ * Thread safe version of PrefixTree
+ *
+ * Reads (get, counts and prefix queries) never lock, they just follow the
+ * child slots, which are atomic, and read the volatile values. Prefix
+ * queries are weakly consistent: they see every key that was there for the
+ * whole query and maybe some that came or went during it.
+ *
+ * Writers lock one node at a time, except pruning which locks a parent and
+ * then its child (always top down, so no deadlocks). A pruned node is marked
+ * removed under its lock, and a writer that finds its node removed starts
+ * over, so nothing can be inserted below a node that is being cut off.
+ *
+ * The counters are striped (LongAdder) so writers don't fight over them
+ ******************************************************************************/
+public class ConcurrentPrefixTree implements PrefixMap {
+
+	protected class Node {
+		/**********************************************
+		 * Same as PrefixTree.Node, but:
+		 *  - value is volatile
+		 *  - children is an AtomicReferenceArray
+		 *  - removed (guarded by the node's lock) is
+		 *    set once the node has been pruned
+		 **********************************************/
+		volatile String value = null;
+		boolean removed = false;
+		final Node parent;
+		final char key;
+		final AtomicReferenceArray<Node> children = new AtomicReferenceArray<>(ALPHABET.size());
+
+		Node(Node parent, char key) { this.parent = parent; this.key = key; }
+
+		Node getChild(char key) { return children.get(ALPHABET.index(key)); }
+
+		/*
+		 * null if this node has been pruned, the caller has to start over
+		 */
+		Node getOrCreateChild(char key) {
+
+			int index = ALPHABET.index(key);
+			Node child = children.get(index);
+			if (child != null)
+				return child;
+
+			synchronized (this) {
+				if (removed)
+					return null;
+				child = children.get(index);
+				if (child == null) {
+					children.set(index, child = new Node(this, key));
+					numNodes.increment();
+				}
+				return child;
+			}
+		}
+
+		boolean hasChildren() {
+			for (int i = 0; i < children.length(); i++)
+				if (children.get(i) != null)
+					return true;
+			return false;
+		}
+		/*********************************************************
+		 * Cuts off dead nodes from here up to the root, locks the
+		 * parent and then the node so nobody can insert below it
+		 * or give it a value in the meantime
+		 *********************************************************/
+		void pruneIfDead() {
+
+			for (Node node = this; node.parent != null; node = node.parent) {
+				synchronized (node.parent) {
+					synchronized (node) {
+						if (node.removed || node.value != null || node.hasChildren())
+							return;
+						node.removed = true;
+						node.parent.children.set(ALPHABET.index(node.key), null);
+						numNodes.decrement();
+					}
+				}
+			}
+		}
+	}
+	/***************************************************************************
+	 * Instance:
+	 *  __________________________ ________________
+	 * |                          |                |
+	 * |     size : LongAdder     |                |
+	 * |     (number of keys)     |  root : Node   |
+	 * |--------------------------|                |
+	 * |    keySum : LongAdder    |                |
+	 * |  (Combined key lengths)  |                |
+	 * |--------------------------|        -------------------->
+	 * |   numNodes : LongAdder   |                |
+	 * |(maintained by Node class)|                |
+	 * |__________________________|________________|
+	 *
+	 *************************************************************************/
+	private final Alphabet ALPHABET;
+	private final Node root;
+	private final LongAdder size = new LongAdder(),
+				keySum = new LongAdder(),
+				numNodes = new LongAdder();
+
+	public ConcurrentPrefixTree(String validChars) {
+		ALPHABET = new Alphabet(validChars);
+		root = new Node(null, '\0');
+		numNodes.increment();
+	}
+
+	public ConcurrentPrefixTree() { this("ACGT"); }
+
+	@Override
+	public boolean isEmpty() { return size() == 0; }
+	@Override
+	public int size() { return size.intValue(); }
+	@Override
+	public int countPrefixes() { return numNodes.intValue() - 1; }
+	@Override
+	public int sumKeyLengths() { return keySum.intValue(); }
+
+	@Override
+	public String get(String key) {
+
+		Node pos = traverse(root, key, ALPHABET);
+		return pos == null ? null : pos.value;
+	}
+	@Override
+	public String put(String key, String value) {
+
+		ALPHABET.verify(key);
+		if (value == null) throw new IllegalArgumentException();
+
+		while (true) {
+			Node pos = root;
+			for (int i = 0; i < key.length() && pos != null; i++)
+				pos = pos.getOrCreateChild(key.charAt(i));
+			if (pos == null)
+				continue; // ran into a node that was being pruned
+
+			String prev;
+			synchronized (pos) {
+				if (pos.removed)
+					continue;
+				prev = pos.value;
+				pos.value = value;
+			}
+			if (prev == null) {
+				keySum.add(key.length());
+				size.increment();
+			}
+			return prev;
+		}
+	}
+	@Override
+	public String remove(String key) {
+
+		Node pos = traverse(root, key, ALPHABET);
+		if (pos == null)
+			return null;
+
+		String prev;
+		synchronized (pos) {
+			prev = pos.value;
+			pos.value = null;
+		}
+		if (prev == null)
+			return null;
+
+		keySum.add(-key.length());
+		size.decrement();
+		pos.pruneIfDead();
+		return prev;
+	}
+
+	/**************************************************************************************
+	 * Same as PrefixTree's, but atomic: the function runs under the key's node lock, so
+	 * nothing else changes that key in between (keep it short, and don't touch the tree
+	 * from inside it). A key that didn't get a value has its path pruned again
+	 **************************************************************************************/
+	public String putIfAbsent(String key, String value) {
+		if (value == null) throw new IllegalArgumentException();
+		return update(key, (k, old) -> old != null ? old : value, true);
+	}
+
+	public String computeIfAbsent(String key, Function<? super String, ? extends String> mapping) {
+		if (mapping == null) throw new IllegalArgumentException("null function");
+		return update(key, (k, old) -> old != null ? old : mapping.apply(k), false);
+	}
+
+	public String compute(String key, BiFunction<? super String, ? super String, ? extends String> remapping) {
+		if (remapping == null) throw new IllegalArgumentException("null function");
+		return update(key, remapping, false);
+	}
+
+	public String merge(String key, String value, BiFunction<? super String, ? super String, ? extends String> remapping) {
+		if (value == null) throw new IllegalArgumentException();
+		if (remapping == null) throw new IllegalArgumentException("null function");
+		return update(key, (k, old) -> old == null ? value : remapping.apply(old, value), false);
+	}
+
+	private String update(String key, BiFunction<? super String, ? super String, ? extends String> f, boolean returnOld) {
+
+		ALPHABET.verify(key);
+		while (true) {
+			Node pos = root;
+			for (int i = 0; i < key.length() && pos != null; i++)
+				pos = pos.getOrCreateChild(key.charAt(i));
+			if (pos == null)
+				continue; // ran into a node that was being pruned
+
+			String old, value = null;
+			try {
+				synchronized (pos) {
+					if (pos.removed)
+						continue;
+					old = pos.value;
+					value = f.apply(key, old);
+					pos.value = value;
+				}
+			} finally {
+				if (value == null) // also when the function threw, the path may be new
+					pos.pruneIfDead();
+			}
+			if (old == null && value != null) {
+				keySum.add(key.length());
+				size.increment();
+			} else if (old != null && value == null) {
+				keySum.add(-key.length());
+				size.decrement();
+			}
+			return returnOld ? old : value;
+		}
+	}
+
+	private static Node traverse(Node from, String path, Alphabet alphabet) {
+
+		if (path == null) throw new IllegalArgumentException("null key");
+		Node cur = from;
+
+		int i = 0;
+		for (; i < path.length() && cur != null; i++)
+			cur = cur.getChild(path.charAt(i));
+
+		alphabet.verify(path, i);
+		return cur;
+	}
+
+	@Override
+	public int countKeysMatchingPrefix(String prefix) {
+
+		Node subtrie = traverse(root, prefix, ALPHABET);
+		if (subtrie == null)
+			return 0;
+
+		int count = 0;
+		Node[] stack = new Node[16];
+		int top = 0;
+		stack[top++] = subtrie;
+		while (top > 0) {
+			Node cur = stack[--top];
+			if (cur.value != null)
+				count++;
+			for (int i = 0; i < cur.children.length(); i++) {
+				Node child = cur.children.get(i);
+				if (child == null)
+					continue;
+				if (top == stack.length)
+					stack = Arrays.copyOf(stack, top * 2);
+				stack[top++] = child;
+			}
+		}
+		return count;
+	}
+	@Override
+	public List<String> getKeysMatchingPrefix(String prefix) {
+
+		List<String> keys = new ArrayList<>();
+		Node subtrie = traverse(root, prefix, ALPHABET);
+		if (subtrie != null)
+			preOrderKeys(subtrie, prefix, keys);
+		return keys;
+	}
+	/**************************************************************************************
+	 * Populates the list with keys in the subtrie, with an explicit stack (children are
+	 * pushed backwards so they come off in order) and a single char buffer
+	 **************************************************************************************/
+	private static void preOrderKeys(Node subtrie, String prefix, List<String> keys) {
+
+		int base = prefix.length();
+		char[] buf = Arrays.copyOf(prefix.toCharArray(), base + 16);
+		Node[] stack = new Node[16];
+		int[] depths = new int[16];
+		int top = 0;
+
+		stack[top] = subtrie;
+		depths[top++] = base;
+		while (top > 0) {
+			Node cur = stack[--top];
+			int depth = depths[top];
+			if (depth > base) {
+				if (depth > buf.length)
+					buf = Arrays.copyOf(buf, depth * 2);
+				buf[depth - 1] = cur.key;
+			}
+			if (cur.value != null)
+				keys.add(new String(buf, 0, depth));
+
+			for (int i = cur.children.length() - 1; i >= 0; i--) {
+				Node child = cur.children.get(i);
+				if (child == null)
+					continue;
+				if (top == stack.length) {
+					stack = Arrays.copyOf(stack, top * 2);
+					depths = Arrays.copyOf(depths, top * 2);
+				}
+				stack[top] = child;
+				depths[top++] = depth + 1;
+			}
+		}
+	}
+}
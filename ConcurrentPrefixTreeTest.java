@@ -0,0 +1,71 @@
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class ConcurrentPrefixTreeTest extends BasicTest {
+	
+	@Override
+	protected PrefixMap create() { return new ConcurrentPrefixTree("ACTG"); }
+	
+	@Test
+	public void testConcurrentPutRemove() throws InterruptedException {
+		PrefixMap t = create();
+		int threads = 8, perThread = 2000;
+		List<Thread> workers = new ArrayList<>();
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		
+		// every thread inserts its own keys and removes half of them again,
+		// while the others keep pruning and growing the same shared prefixes
+		for (int n = 0; n < threads; n++) {
+			final int id = n;
+			workers.add(new Thread(() -> {
+				try {
+					Random RNG = new Random(id);
+					for (int i = 0; i < perThread; i++) {
+						String key = bases(id, 2) + bases(i, 6) + randomKey(RNG);
+						assertNull(t.put(key, key));
+						if (i % 2 == 0)
+							assertEquals(key, t.remove(key));
+					}
+				} catch (Throwable x) {
+					failure.compareAndSet(null, x);
+				}
+			}));
+		}
+		for (Thread w : workers) w.start();
+		for (Thread w : workers) w.join();
+		assertNull(failure.get());
+		
+		assertEquals(threads * perThread / 2, t.size());
+		assertEquals(t.size(), t.getKeysMatchingPrefix("").size());
+		assertEquals(t.size(), t.countKeysMatchingPrefix(""));
+		
+		// the tree has to end up exactly as if the survivors were put on their own
+		PrefixMap checker = new PrefixTree("ACTG");
+		for (String key : t.getKeysMatchingPrefix(""))
+			assertNull(checker.put(key, key));
+		assertEquals(checker.countPrefixes(), t.countPrefixes());
+		assertEquals(checker.sumKeyLengths(), t.sumKeyLengths());
+	}
+	
+	/*
+	 * n written in base 4 with the given number of digits
+	 */
+	private static String bases(int n, int digits) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < digits; i++, n /= 4)
+			sb.append(NonDeterministicTest.BASES[n % 4]);
+		return sb.toString();
+	}
+	
+	private static String randomKey(Random RNG) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = RNG.nextInt(12); i > 0; i--)
+			sb.append(NonDeterministicTest.BASES[RNG.nextInt(4)]);
+		return sb.toString();
+	}
+}
@@ -0,0 +1,438 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.AbstractMap.SimpleEntry;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Map;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/******************************************************************************
+ * PrefixTree that survives crashes: every put and remove is appended to a
+ * write-ahead log and doesn't return until the log has been forced to disk
+ *
+ * The directory holds two files:
+ *  - snapshot : the tree as of the last checkpoint (MappedPrefixMap format)
+ *  - log      : the mutations since then, one record each
+ *     _______ ________ ____ ___________________ _____________________
+ *    | crc32 | length | op | key length, chars | value length, chars |
+ *    |       | (body) |    |                   | (puts only)         |
+ *    |_______|________|____|___________________|_____________________|
+ *
+ * Opening replays the log on top of the snapshot, a torn or corrupt record at
+ * the end (crash in the middle of a write) is where the log stops, and it is
+ * cut off there
+ *
+ * Group commit: writers apply their change and queue the record under the
+ * tree's lock, then wait for the log. The first one waiting becomes the
+ * leader, writes everything queued so far and forces once for all of them,
+ * so under load one fsync covers a whole batch of writers
+ *
+ * Once the log passes checkpointBytes the leader writes a new snapshot and
+ * empties the log. Readers may see a change a little before it is durable
+ *
+ * If writing the log fails, every change that wasn't durable yet is undone
+ * in the tree (newest first, from the previous values kept with each
+ * queued record) and the map turns read only: later puts and removes throw
+ * UncheckedIOException without touching anything, so memory never has
+ * more than the disk does. Reopen the directory to start writing again
+ ******************************************************************************/
+public class DurablePrefixMap implements PrefixMap, Closeable {
+
+	private static final byte PUT = 1, REMOVE = 2;
+	private static final int RECORD_HEADER = 8, REPLAY_CHUNK = 1 << 20;
+	public static final long DEFAULT_CHECKPOINT_BYTES = 64 << 20;
+
+	private final PrefixTree tree;
+	private final Path snapshot, log;
+	private final FileChannel channel;
+	private final long checkpointBytes;
+
+	// guarded by this (with the tree)
+	private ByteBuffer pending = ByteBuffer.allocate(1 << 16);
+	private long queued = 0; // records queued so far
+	private int checkpoints = 0;
+	private final ArrayDeque<Undo> undo = new ArrayDeque<>(); // records that aren't durable yet, oldest first
+	private IOException broken = null; // read only once set
+
+	/*
+	 * What a queued record changed, to put it back if the log write fails
+	 */
+	private static final class Undo {
+		final long record;
+		final String key, prev; // prev null: the key wasn't there
+
+		Undo(long record, String key, String prev) { this.record = record; this.key = key; this.prev = prev; }
+	}
+
+	// guarded by commitLock
+	private final Object commitLock = new Object();
+	private long durable = 0; // records known to be on disk
+	private boolean flushing = false;
+	private IOException failure = null;
+
+	// guarded by logLock, held while writing to the channel
+	private final Object logLock = new Object();
+
+	public static DurablePrefixMap open(Path dir, String validChars) throws IOException {
+		return new DurablePrefixMap(dir, validChars, DEFAULT_CHECKPOINT_BYTES);
+	}
+
+	public static DurablePrefixMap open(Path dir) throws IOException { return open(dir, "ACGT"); }
+
+	public DurablePrefixMap(Path dir, String validChars, long checkpointBytes) throws IOException {
+
+		Files.createDirectories(dir);
+		this.snapshot = dir.resolve("snapshot");
+		this.log = dir.resolve("log");
+		this.checkpointBytes = checkpointBytes;
+		this.tree = Files.exists(snapshot) ? load(snapshot, validChars) : new PrefixTree(validChars);
+		channel = FileChannel.open(log, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		channel.truncate(replay());
+		channel.position(channel.size());
+	}
+
+	/***************************************************************************
+	 * Recovery
+	 ***************************************************************************/
+	/*
+	 * The snapshot's entries come out sorted, so the bulk loader builds the
+	 * tree in one pass
+	 */
+	private static PrefixTree load(Path snapshot, String validChars) throws IOException {
+		MappedPrefixMap last = MappedPrefixMap.open(snapshot);
+		List<Map.Entry<String, String>> entries = new ArrayList<>(last.size());
+		last.forEachMatchingPrefix("", (key, value) -> entries.add(new SimpleEntry<>(key, value)));
+		return PrefixTree.build(validChars, entries);
+	}
+
+	/*
+	 * Applies the log to the tree, returns where the last good record ends.
+	 * Reads it a chunk at a time (the log can be any size, a record is less
+	 * than 2GB)
+	 */
+	private long replay() throws IOException {
+
+		ByteBuffer buf = ByteBuffer.allocate(REPLAY_CHUNK).flip();
+		long good = 0, size = channel.size();
+		CRC32 crc = new CRC32();
+		while (true) {
+			buf = fill(buf, RECORD_HEADER);
+			if (buf.remaining() < RECORD_HEADER)
+				return good;
+			int sum = buf.getInt(), length = buf.getInt();
+			if (length <= 0 || length > size - good - RECORD_HEADER)
+				return good; // torn (checked before reading, the length may be garbage)
+			buf = fill(buf, length);
+			if (buf.remaining() < length)
+				return good;
+
+			ByteBuffer body = buf.slice(buf.position(), length);
+			crc.reset();
+			crc.update(body.duplicate());
+			if ((int) crc.getValue() != sum)
+				return good; // half written (or garbage)
+
+			byte op = body.get();
+			String key = readString(body);
+			if (op == PUT)
+				tree.put(key, readString(body));
+			else
+				tree.remove(key);
+			buf.position(buf.position() + length);
+			good += RECORD_HEADER + length;
+		}
+	}
+
+	/*
+	 * Reads on from the log until buf has n bytes left (or the log ends),
+	 * moving what's left to the front of buf, or of a bigger one if it
+	 * doesn't fit
+	 */
+	private ByteBuffer fill(ByteBuffer buf, int n) throws IOException {
+
+		if (buf.remaining() >= n)
+			return buf;
+		if (buf.capacity() < n)
+			buf = ByteBuffer.allocate(n).put(buf);
+		else
+			buf.compact();
+		while (buf.position() < n && channel.read(buf) > 0)
+			;
+		return buf.flip();
+	}
+
+	private static String readString(ByteBuffer buf) {
+		char[] chars = new char[buf.getInt()];
+		for (int i = 0; i < chars.length; i++)
+			chars[i] = buf.getChar();
+		return new String(chars);
+	}
+
+	/***************************************************************************
+	 * Logging
+	 ***************************************************************************/
+	/*
+	 * Queues a record, caller has the lock and has already applied it to the
+	 * tree (so only valid changes get logged), prev is what the key had
+	 * before. Returns the record's number
+	 */
+	private long queue(byte op, String key, String value, String prev) {
+
+		int length = 1 + 4 + 2 * key.length() + (op == PUT ? 4 + 2 * value.length() : 0);
+		if (pending.remaining() < RECORD_HEADER + length) {
+			int capacity = Math.max(pending.capacity() * 2, pending.position() + RECORD_HEADER + length);
+			pending = ByteBuffer.allocate(capacity).put(pending.flip());
+		}
+
+		int start = pending.position();
+		pending.position(start + RECORD_HEADER);
+		pending.put(op);
+		pending.putInt(key.length());
+		for (int i = 0; i < key.length(); i++)
+			pending.putChar(key.charAt(i));
+		if (op == PUT) {
+			pending.putInt(value.length());
+			for (int i = 0; i < value.length(); i++)
+				pending.putChar(value.charAt(i));
+		}
+
+		CRC32 crc = new CRC32();
+		crc.update(pending.slice(start + RECORD_HEADER, length));
+		pending.putInt(start, (int) crc.getValue());
+		pending.putInt(start + 4, length);
+		undo.add(new Undo(++queued, key, prev));
+		return queued;
+	}
+
+	/*
+	 * Caller has the lock, throws if the log has failed
+	 */
+	private void checkWritable() {
+		if (broken != null)
+			throw new UncheckedIOException("write-ahead log failed, the map is read only", broken);
+	}
+
+	/*
+	 * Waits until the record is on disk, leading the next batch if nobody else is
+	 */
+	private void await(long record) {
+
+		while (true) {
+			synchronized (commitLock) {
+				while (true) {
+					if (durable >= record)
+						return;
+					if (failure != null)
+						throw new UncheckedIOException("write-ahead log failed, the change was undone", failure);
+					if (!flushing)
+						break;
+					try {
+						commitLock.wait();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new IllegalStateException("interrupted before the change was durable");
+					}
+				}
+				flushing = true;
+			}
+			flush();
+		}
+	}
+
+	/*
+	 * Leader only: writes and forces everything queued so far
+	 */
+	private void flush() {
+
+		ByteBuffer batch;
+		long last;
+		int generation;
+		synchronized (this) {
+			batch = pending.flip();
+			pending = ByteBuffer.allocate(Math.max(1 << 16, batch.capacity() / 2));
+			last = queued;
+			generation = checkpoints;
+		}
+
+		IOException error = null;
+		long logSize = 0;
+		try {
+			synchronized (logLock) {
+				if (generation == checkpoints) { // else a checkpoint already covered the batch
+					while (batch.hasRemaining())
+						channel.write(batch);
+					channel.force(false);
+				}
+				logSize = channel.size();
+			}
+		} catch (IOException e) {
+			error = e;
+		}
+
+		synchronized (this) {
+			if (error != null) {
+				// none of what's queued can be trusted to be on disk (this batch, and
+				// everything queued after it would follow a hole in the log)
+				broken = error;
+				while (!undo.isEmpty()) {
+					Undo u = undo.pollLast();
+					if (u.prev == null)
+						tree.remove(u.key);
+					else
+						tree.put(u.key, u.prev);
+				}
+				pending.clear();
+			} else {
+				while (!undo.isEmpty() && undo.peekFirst().record <= last)
+					undo.pollFirst();
+			}
+		}
+		synchronized (commitLock) {
+			if (error != null)
+				failure = error;
+			else
+				durable = Math.max(durable, last);
+			flushing = false;
+			commitLock.notifyAll();
+		}
+
+		if (error == null && logSize > checkpointBytes)
+			checkpoint();
+	}
+
+	/***************************************************************************
+	 * Checkpoints
+	 ***************************************************************************/
+	/*
+	 * Writes the whole tree as the new snapshot and empties the log. Writers
+	 * are held up for the duration, readers too
+	 */
+	public synchronized void checkpoint() {
+
+		checkWritable();
+		try {
+			synchronized (logLock) {
+				Path next = snapshot.resolveSibling("snapshot.next");
+				MappedPrefixMap.write(tree, next);
+				try (FileChannel file = FileChannel.open(next, StandardOpenOption.WRITE)) {
+					file.force(true);
+				}
+				Files.move(next, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				forceDirectory(snapshot.getParent());
+
+				// everything queued is in the snapshot now
+				channel.truncate(0);
+				channel.force(true);
+				pending.clear();
+				undo.clear();
+				checkpoints++;
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("checkpoint failed", e);
+		}
+
+		synchronized (commitLock) {
+			durable = Math.max(durable, queued);
+			commitLock.notifyAll();
+		}
+	}
+
+	/*
+	 * So the rename itself survives a crash, not every platform lets a directory be opened
+	 */
+	private static void forceDirectory(Path dir) {
+		try (FileChannel file = FileChannel.open(dir, StandardOpenOption.READ)) {
+			file.force(true);
+		} catch (IOException e) {}
+	}
+
+	/*
+	 * Size of the log on disk (not counting what is still queued)
+	 */
+	public long logBytes() {
+		synchronized (logLock) {
+			try {
+				return channel.size();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+
+	/*
+	 * Waits for whatever is queued, unless the log has failed (then it's been undone)
+	 */
+	@Override
+	public void close() throws IOException {
+		long last;
+		synchronized (this) {
+			last = broken == null ? queued : 0;
+		}
+		try {
+			await(last);
+		} catch (UncheckedIOException e) {
+			// failed on the way, the changes are undone already
+		} finally {
+			synchronized (logLock) {
+				channel.close();
+			}
+		}
+	}
+
+	/***************************************************************************
+	 * PrefixMap
+	 ***************************************************************************/
+	@Override
+	public synchronized boolean isEmpty() { return tree.isEmpty(); }
+	@Override
+	public synchronized int size() { return tree.size(); }
+	@Override
+	public synchronized int countPrefixes() { return tree.countPrefixes(); }
+	@Override
+	public synchronized int sumKeyLengths() { return tree.sumKeyLengths(); }
+
+	@Override
+	public synchronized String get(String key) { return tree.get(key); }
+
+	@Override
+	public String put(String key, String value) {
+
+		String prev;
+		long record;
+		synchronized (this) {
+			checkWritable();
+			prev = tree.put(key, value); // validates
+			record = queue(PUT, key, value, prev);
+		}
+		await(record);
+		return prev;
+	}
+	@Override
+	public String remove(String key) {
+
+		String prev;
+		long record;
+		synchronized (this) {
+			checkWritable();
+			prev = tree.remove(key);
+			if (prev == null)
+				return null; // nothing changed, nothing to log
+			record = queue(REMOVE, key, null, prev);
+		}
+		await(record);
+		return prev;
+	}
+
+	@Override
+	public synchronized int countKeysMatchingPrefix(String prefix) { return tree.countKeysMatchingPrefix(prefix); }
+	@Override
+	public synchronized List<String> getKeysMatchingPrefix(String prefix) { return tree.getKeysMatchingPrefix(prefix); }
+}
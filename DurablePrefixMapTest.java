@@ -0,0 +1,284 @@
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class DurablePrefixMapTest extends BasicTest {
+	
+	private final List<DurablePrefixMap> opened = new ArrayList<>();
+	private final List<Path> dirs = new ArrayList<>();
+	
+	@Override
+	protected PrefixMap create() {
+		try {
+			DurablePrefixMap t = DurablePrefixMap.open(tempDir(), "ACTG");
+			opened.add(t);
+			return t;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	private Path tempDir() throws IOException {
+		Path dir = Files.createTempDirectory("durable-prefix-map");
+		dirs.add(dir);
+		return dir;
+	}
+	
+	@After
+	public void cleanUp() throws IOException {
+		for (DurablePrefixMap t : opened)
+			t.close();
+		for (Path dir : dirs)
+			try (Stream<Path> files = Files.walk(dir)) {
+				for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator)
+					Files.delete(file);
+			}
+	}
+	
+	@Test
+	public void testReopen() throws IOException {
+		Path dir = tempDir();
+		try (DurablePrefixMap t = DurablePrefixMap.open(dir, "ACTG")) {
+			t.put("CAT", "meow");
+			t.put("GATTACA", "movie");
+			t.put("CAT", "purr");
+			t.put("A", "for effort");
+			t.remove("A");
+		}
+		try (DurablePrefixMap t = DurablePrefixMap.open(dir, "ACTG")) {
+			assertEquals(2, t.size());
+			assertEquals("purr", t.get("CAT"));
+			assertEquals("movie", t.get("GATTACA"));
+			assertNull(t.get("A"));
+			assertEquals(3 + 7, t.sumKeyLengths());
+		}
+	}
+	
+	@Test
+	public void testTornTail() throws IOException {
+		Path dir = tempDir();
+		try (DurablePrefixMap t = DurablePrefixMap.open(dir, "ACTG")) {
+			t.put("CAT", "meow");
+			t.put("GAT", "tag");
+		}
+		
+		// chop the last record in half, as if the crash happened mid write
+		Path log = dir.resolve("log");
+		long full = Files.size(log);
+		try (FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE)) {
+			channel.truncate(full - 5);
+		}
+		try (DurablePrefixMap t = DurablePrefixMap.open(dir, "ACTG")) {
+			assertEquals("meow", t.get("CAT"));
+			assertNull(t.get("GAT"));
+			assertEquals(1, t.size());
+			t.put("TAG", "gat"); // appends after the last good record
+		}
+		try (DurablePrefixMap t = DurablePrefixMap.open(dir, "ACTG")) {
+			assertEquals("meow", t.get("CAT"));
+			assertEquals("gat", t.get("TAG"));
+		}
+	}
+	
+	@Test
+	public void testCorruptRecord() throws IOException {
+		Path dir = tempDir();
+		try (DurablePrefixMap t = DurablePrefixMap.open(dir, "ACTG")) {
+			t.put("CAT", "meow");
+			t.put("GAT", "tag");
+		}
+		
+		Path log = dir.resolve("log");
+		try (FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE)) {
+			channel.write(ByteBuffer.wrap(new byte[] { 'X' }), Files.size(log) - 1);
+		}
+		try (DurablePrefixMap t = DurablePrefixMap.open(dir, "ACTG")) {
+			assertEquals("meow", t.get("CAT"));
+			assertNull(t.get("GAT"));
+		}
+	}
+	
+	@Test
+	public void testCheckpoint() throws IOException {
+		Path dir = tempDir();
+		try (DurablePrefixMap t = DurablePrefixMap.open(dir, "ACTG")) {
+			t.put("CAT", "meow");
+			t.put("GAT", "tag");
+			t.checkpoint();
+			assertEquals(0, t.logBytes());
+			t.remove("GAT");
+			t.put("TAG", "gat");
+		}
+		try (DurablePrefixMap t = DurablePrefixMap.open(dir, "ACTG")) {
+			assertEquals("meow", t.get("CAT"));
+			assertNull(t.get("GAT"));
+			assertEquals("gat", t.get("TAG"));
+			assertEquals(2, t.size());
+		}
+	}
+	
+	@Test
+	public void testAutomaticCheckpoint() throws IOException {
+		Path dir = tempDir();
+		try (DurablePrefixMap t = new DurablePrefixMap(dir, "ACTG", 1 << 10)) {
+			for (int i = 0; i < 1000; i++)
+				t.put(key(i), "value " + i);
+			assertTrue(t.logBytes() <= 1 << 10);
+		}
+		try (DurablePrefixMap t = DurablePrefixMap.open(dir, "ACTG")) {
+			assertEquals(1000, t.size());
+			for (int i = 0; i < 1000; i++)
+				assertEquals("value " + i, t.get(key(i)));
+		}
+	}
+	
+	@Test
+	public void testInvalidKeysAreNotLogged() throws IOException {
+		Path dir = tempDir();
+		try (DurablePrefixMap t = DurablePrefixMap.open(dir, "ACTG")) {
+			try {
+				t.put("DOG", "woof");
+				fail();
+			} catch (MalformedKeyException e) {}
+			assertNull(t.remove("CAT"));
+			assertEquals(0, t.logBytes());
+		}
+	}
+	
+	@Test
+	public void testConcurrentWriters() throws Exception {
+		Path dir = tempDir();
+		int threads = 8, perThread = 500;
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		try (DurablePrefixMap t = DurablePrefixMap.open(dir, "ACTG")) {
+			List<Thread> workers = new ArrayList<>();
+			for (int w = 0; w < threads; w++) {
+				int offset = w * perThread;
+				Thread worker = new Thread(() -> {
+					try {
+						for (int i = offset; i < offset + perThread; i++)
+							t.put(key(i), "value " + i);
+					} catch (Throwable e) {
+						failure.set(e);
+					}
+				});
+				workers.add(worker);
+				worker.start();
+			}
+			for (Thread worker : workers)
+				worker.join();
+		}
+		assertNull(failure.get());
+		
+		try (DurablePrefixMap t = DurablePrefixMap.open(dir, "ACTG")) {
+			assertEquals(threads * perThread, t.size());
+			for (int i = 0; i < threads * perThread; i++)
+				assertEquals("value " + i, t.get(key(i)));
+		}
+	}
+	
+	/*
+	 * An interrupted write closes the log's channel, which is as good a way
+	 * as any to make the next write fail
+	 */
+	@Test
+	public void testLogFailure() throws IOException {
+		Path dir = tempDir();
+		try (DurablePrefixMap t = DurablePrefixMap.open(dir, "ACTG")) {
+			t.put("CAT", "meow");
+			t.put("GAT", "tag");
+			
+			Thread.currentThread().interrupt();
+			try {
+				t.put("CAT", "purr");
+				fail();
+			} catch (UncheckedIOException e) {
+			} finally {
+				Thread.interrupted();
+			}
+			assertEquals("meow", t.get("CAT")); // undone
+			assertEquals(2, t.size());
+			
+			try {
+				t.put("TAG", "gat");
+				fail();
+			} catch (UncheckedIOException e) {}
+			try {
+				t.remove("GAT");
+				fail();
+			} catch (UncheckedIOException e) {}
+			try {
+				t.checkpoint();
+				fail();
+			} catch (UncheckedIOException e) {}
+			assertNull(t.get("TAG")); // rejected before touching the tree
+			assertEquals("tag", t.get("GAT"));
+			assertEquals(2, t.size());
+			assertEquals(6, t.sumKeyLengths());
+		}
+		try (DurablePrefixMap t = DurablePrefixMap.open(dir, "ACTG")) { // memory and disk agree
+			assertEquals("meow", t.get("CAT"));
+			assertEquals("tag", t.get("GAT"));
+			assertEquals(2, t.size());
+			t.put("TAG", "gat"); // writable again
+		}
+	}
+	
+	@Test
+	public void testSnapshotReload() throws IOException {
+		Path dir = tempDir();
+		try (DurablePrefixMap t = DurablePrefixMap.open(dir, "ACTG")) {
+			t.put("", "empty");
+			t.put("GATTACA", "movie");
+			t.put("GAT", "tag");
+			t.put("CAT", "tag");
+			t.checkpoint();
+		}
+		try (DurablePrefixMap t = DurablePrefixMap.open(dir, "ACTG")) {
+			assertEquals(0, t.logBytes());
+			assertEquals(4, t.size());
+			assertEquals(7 + 3, t.countPrefixes());
+			assertEquals(13, t.sumKeyLengths());
+			assertEquals("empty", t.get(""));
+			assertEquals("movie", t.get("GATTACA"));
+			assertEquals(2, t.countKeysMatchingPrefix("GAT"));
+		}
+	}
+	
+	@Test
+	public void testReplayInChunks() throws IOException {
+		Path dir = tempDir();
+		String big = "x".repeat(3 << 20); // bigger than a chunk on its own
+		try (DurablePrefixMap t = new DurablePrefixMap(dir, "ACTG", Long.MAX_VALUE)) {
+			for (int i = 0; i < 5000; i++)
+				t.put(key(i), "value " + i + " " + "y".repeat(i % 1000)); // records across chunk boundaries
+			t.put("AGATTACA", big); // key() never starts with A
+			t.put("ACAT", "meow");
+			assertTrue(t.logBytes() > 10 << 20); // ten chunks or so
+		}
+		try (DurablePrefixMap t = DurablePrefixMap.open(dir, "ACTG")) {
+			assertEquals(5000 + 2, t.size());
+			for (int i = 0; i < 5000; i++)
+				assertEquals("value " + i + " " + "y".repeat(i % 1000), t.get(key(i)));
+			assertEquals(big, t.get("AGATTACA"));
+			assertEquals("meow", t.get("ACAT"));
+		}
+	}
+	
+	private static String key(int i) {
+		return Integer.toString(i, 4).replace('0', 'A').replace('1', 'C').replace('2', 'G').replace('3', 'T');
+	}
+}
@@ -1,30 +1,63 @@
 import java.util.List;
 import java.util.HashMap;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 
 public class HMbasedPrefixMap implements PrefixMap {
 	
-	private final HashMap<String, String> keys = new HashMap<>();;
-	private final HashMap<String, ArrayList<String>> prefixes  = new HashMap<>();
-	private final String validCharsRegex;
-	private int keySum = 0;
-
-	public HMbasedPrefixMap(String validChars) { 
-		for (int i = 0; i < validChars.length(); i++) {
-			char ch = validChars.charAt(i);
-			switch (ch) {
-				case '\\':
-				case ']':
-				case '[':
-				case '^':
-					throw new IllegalArgumentException("no " + ch + " pls");
-			}
-			if (i != validChars.lastIndexOf(ch))
-				throw new IllegalArgumentException("repeated characters");
+	/*
+	 * Keys get a small int id, so the prefix index can hold ints instead of the
+	 * key strings themselves
+	 */
+	private static class KeyEntry {
+		final int id;
+		String value;
+		
+		KeyEntry(int id, String value) { this.id = id; this.value = value; }
+	}
+	/*
+	 * Every prefix that starts some key has one of these, with the ids of the
+	 * keys that start with it. A prefix is identified by its parent's id and
+	 * its last character, so the id of each longer prefix of a key comes from
+	 * the one before (no substrings, and no collisions either)
+	 */
+	private static class PrefixEntry {
+		final int id;
+		final IntHashSet keyIds = new IntHashSet();
+		
+		PrefixEntry(int id) { this.id = id; }
+	}
+	/*
+	 * Ids that were freed and can be handed out again
+	 */
+	private static class IntStack {
+		private int[] ids = new int[16];
+		private int top = 0;
+		
+		boolean isEmpty() { return top == 0; }
+		int pop() { return ids[--top]; }
+		void push(int id) {
+			if (top == ids.length)
+				ids = Arrays.copyOf(ids, top * 2);
+			ids[top++] = id;
 		}
-		validCharsRegex = '[' + validChars + "]*+"; 
 	}
 	
+	private final HashMap<String, KeyEntry> keys = new HashMap<>();
+	private final HashMap<Long, PrefixEntry> prefixes = new HashMap<>(); // (parent id << 16 | char) -> entry
+	private final PrefixEntry emptyPrefix = new PrefixEntry(0);
+	private final Alphabet alphabet;
+	private int keySum = 0;
+	
+	private String[] keyOf = new String[16]; // key id -> key
+	private final IntStack freeKeyIds = new IntStack(),
+				freePrefixIds = new IntStack();
+	private int nextKeyId = 0,
+				nextPrefixId = 1; // 0 is the empty prefix
+
+	public HMbasedPrefixMap(String validChars) { alphabet = new Alphabet(validChars); }
+	
 	public HMbasedPrefixMap() { this("ACTG"); }
 
 	@Override
@@ -33,15 +66,15 @@ public class HMbasedPrefixMap implements PrefixMap {
 	@Override
 	public boolean isEmpty() { return keys.isEmpty(); }
 
-	private void verify(String key) {
-		if (key == null) throw new IllegalArgumentException("null key");
-		if (!key.matches(validCharsRegex)) throw new MalformedKeyException();
-	}
+	private void verify(String key) { alphabet.verify(key); }
+	
+	private static long prefixKey(int parentId, char ch) { return (long) parentId << 16 | ch; }
 	
 	@Override
 	public String get(String key) {
 		verify(key);
-		return keys.get(key);
+		KeyEntry entry = keys.get(key);
+		return entry == null ? null : entry.value;
 	}
 
 	@Override
@@ -49,59 +82,92 @@ public class HMbasedPrefixMap implements PrefixMap {
 		verify(key);
 		if (value == null) throw new IllegalArgumentException("null value");
 		
-		if (keys.containsKey(key)) 
-			return keys.put(key, value);
+		KeyEntry entry = keys.get(key);
+		if (entry != null) {
+			String prev = entry.value;
+			entry.value = value;
+			return prev;
+		}
 		
-		for (int i = 0; i <= key.length(); i++) {
-
-			String prefix = key.substring(0, i);
-			ArrayList<String> keyStartingWith = 
-				prefixes.getOrDefault(prefix, new ArrayList<>());
-
-			keyStartingWith.add(key);
-			prefixes.putIfAbsent(prefix, keyStartingWith);
+		int id = freeKeyIds.isEmpty() ? nextKeyId++ : freeKeyIds.pop();
+		if (id == keyOf.length)
+			keyOf = Arrays.copyOf(keyOf, id * 2);
+		keyOf[id] = key;
+		
+		PrefixEntry prefix = emptyPrefix;
+		prefix.keyIds.add(id);
+		for (int i = 0; i < key.length(); i++) {
+			long at = prefixKey(prefix.id, key.charAt(i));
+			PrefixEntry next = prefixes.get(at);
+			if (next == null) {
+				next = new PrefixEntry(freePrefixIds.isEmpty() ? nextPrefixId++ : freePrefixIds.pop());
+				prefixes.put(at, next);
+			}
+			prefix = next;
+			prefix.keyIds.add(id);
 		}
 		keySum += key.length();
-		return keys.put(key, value);
+		keys.put(key, new KeyEntry(id, value));
+		return null;
 	}
 
 	@Override
 	public String remove(String key) {
 		
 		verify(key);
-		if (!keys.containsKey(key))
+		KeyEntry entry = keys.remove(key);
+		if (entry == null)
 			return null;
 		
-		for (int i = 0; i <= key.length(); i++) {
-			String prefix = key.substring(0, i);
-			
-			prefixes.get(prefix).remove(key);
-			if (prefixes.get(prefix).isEmpty())
-				prefixes.remove(prefix);
+		// O(L): one lookup and one set removal per prefix
+		PrefixEntry prefix = emptyPrefix;
+		prefix.keyIds.remove(entry.id);
+		for (int i = 0; i < key.length(); i++) {
+			long at = prefixKey(prefix.id, key.charAt(i));
+			prefix = prefixes.get(at);
+			prefix.keyIds.remove(entry.id);
+			if (prefix.keyIds.size() == 0) { // so are all the longer ones, their ids go back too
+				prefixes.remove(at);
+				freePrefixIds.push(prefix.id);
+			}
 		}
+		keyOf[entry.id] = null;
+		freeKeyIds.push(entry.id);
 		keySum -= key.length();
-		return keys.remove(key);
+		return entry.value;
+	}
+	
+	/*
+	 * Entry for the prefix, null if no key starts with it
+	 */
+	private PrefixEntry find(String prefix) {
+		verify(prefix);
+		PrefixEntry cur = emptyPrefix;
+		for (int i = 0; i < prefix.length() && cur != null; i++)
+			cur = prefixes.get(prefixKey(cur.id, prefix.charAt(i)));
+		return cur;
 	}
 
 	@Override
 	public int countKeysMatchingPrefix(String prefix) {
-		verify(prefix);
-		return prefixes.getOrDefault(prefix, new ArrayList<>()).size();
+		PrefixEntry entry = find(prefix);
+		return entry == null ? 0 : entry.keyIds.size();
 	}
 
 	@Override
 	public List<String> getKeysMatchingPrefix(String prefix) {
-		verify(prefix);
 		
 		ArrayList<String> keysMPrefix = new ArrayList<>();
-		if (prefixes.containsKey(prefix))
-			keysMPrefix.addAll(prefixes.get(prefix));
+		PrefixEntry entry = find(prefix);
+		if (entry != null)
+			entry.keyIds.forEach(id -> keysMPrefix.add(keyOf[id]));
+		Collections.sort(keysMPrefix); // same order as the trees
 		
 		return keysMPrefix;
 	}
 
 	@Override
-	public int countPrefixes() { return keys.isEmpty() ? 0 : prefixes.size() - 1; }
+	public int countPrefixes() { return prefixes.size(); }
 
 	@Override
 	public int sumKeyLengths() { return keySum; }
@@ -0,0 +1,40 @@
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+public class HMbasedPrefixMapTest extends BasicTest {
+	
+	@Override
+	protected PrefixMap create() { return new HMbasedPrefixMap("ACTG"); }
+	
+	@Test
+	public void testChurn() {
+		// ids get freed and handed out again, the index has to stay right
+		HMbasedPrefixMap t = new HMbasedPrefixMap("ACTG");
+		PrefixTree checker = new PrefixTree("ACTG");
+		Random RNG = new Random(11);
+		for (int i = 0; i < 20000; i++) {
+			char[] key = new char[RNG.nextInt(8)];
+			for (int j = 0; j < key.length; j++)
+				key[j] = "ACGT".charAt(RNG.nextInt(4));
+			String k = new String(key);
+			if (RNG.nextBoolean())
+				assertEquals(checker.put(k, "v" + i), t.put(k, "v" + i));
+			else
+				assertEquals(checker.remove(k), t.remove(k));
+		}
+		assertEquals(checker.size(), t.size());
+		assertEquals(checker.countPrefixes(), t.countPrefixes());
+		assertEquals(checker.sumKeyLengths(), t.sumKeyLengths());
+		for (String prefix : new String[] { "", "A", "CG", "TTA" }) {
+			assertEquals(checker.countKeysMatchingPrefix(prefix), t.countKeysMatchingPrefix(prefix));
+			List<String> keys = new ArrayList<>(t.getKeysMatchingPrefix(prefix));
+			Collections.sort(keys);
+			assertEquals(checker.getKeysMatchingPrefix(prefix), keys);
+		}
+	}
+}
@@ -0,0 +1,360 @@
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+/******************************************************************************
+ * Decorator that measures what any PrefixMap is doing
+ *
+ *  - per operation: count, rejected keys (MalformedKeyException), latency
+ *    histogram (HDR style: 8 buckets per power of two, so within 12.5%)
+ *  - per depth: keys put at that length
+ *  - nodes allocated and pruned, and per depth how often a node there
+ *    gained a child (a new key forking off) or lost one (a pruned branch),
+ *    which is how the fan-out at each depth moves
+ *
+ * Recording is counters and atomic array slots only, no locks and no
+ * allocation, and exact under any concurrency.
+ *
+ * The node numbers need help from the map. A PrefixTree reports every
+ * branch it grows or prunes to a BranchListener, which costs it nothing
+ * measurable. That includes changes made straight on the tree, not just
+ * the ones made through here. Any other map has no node numbers, unless
+ * countNodes is asked for. Then countPrefixes() is called before and
+ * after each put and remove, outside the timed part, and the difference
+ * is taken. That can be expensive (a lock on DurablePrefixMap, every shard
+ * of a ShardedPrefixMap, two round trips for a RemotePrefixMap). With more
+ * than one writer it is also wrong, because the difference picks up the
+ * other writers' changes. The latencies and key counts are still right.
+ *
+ * Readable over JMX (register) or as text (dump). instrument() hands back
+ * the map itself when -Dprefixmap.instrument=false, so switched off there
+ * is nothing in the way at all
+ ******************************************************************************/
+public class InstrumentedPrefixMap implements PrefixMap {
+
+	public enum Operation { GET, PUT, REMOVE, COUNT_KEYS_MATCHING_PREFIX, GET_KEYS_MATCHING_PREFIX }
+
+	public static PrefixMap instrument(PrefixMap map) {
+		return Boolean.parseBoolean(System.getProperty("prefixmap.instrument", "true")) ? new InstrumentedPrefixMap(map) : map;
+	}
+
+	/***************************************************************************
+	 * Log-linear histogram of non-negative longs:
+	 *  0..7 get a bucket each, after that every power of two is split in 8
+	 *  (the top 3 bits after the leading one pick the bucket)
+	 ***************************************************************************/
+	static final class Histogram {
+
+		private static final int SUB_BITS = 3, SUB = 1 << SUB_BITS;
+		private final AtomicLongArray counts = new AtomicLongArray((64 - SUB_BITS) * SUB);
+		private final LongAdder total = new LongAdder(), sum = new LongAdder();
+		private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+		static int bucket(long value) {
+			if (value < SUB)
+				return (int) value;
+			int exp = 63 - Long.numberOfLeadingZeros(value);
+			return (exp - SUB_BITS + 1) * SUB + (int) (value >>> (exp - SUB_BITS)) - SUB;
+		}
+
+		static long lowest(int bucket) {
+			if (bucket < SUB)
+				return bucket;
+			int exp = bucket / SUB + SUB_BITS - 1;
+			return (long) (SUB + bucket % SUB) << (exp - SUB_BITS);
+		}
+
+		void record(long value) {
+			counts.incrementAndGet(bucket(Math.max(0, value)));
+			total.increment();
+			sum.add(value);
+			max.accumulate(value);
+		}
+
+		long count() { return total.sum(); }
+		long max() { return max.get(); }
+		double mean() {
+			long n = total.sum();
+			return n == 0 ? 0 : (double) sum.sum() / n;
+		}
+		/*
+		 * Lower bound of the bucket the given fraction of values are at or under
+		 */
+		long percentile(double fraction) {
+			long n = total.sum(), seen = 0;
+			if (n == 0)
+				return 0;
+			for (int b = 0; b < counts.length(); b++) {
+				seen += counts.get(b);
+				if (seen >= Math.ceil(fraction * n))
+					return lowest(b);
+			}
+			return max();
+		}
+
+		void reset() {
+			for (int b = 0; b < counts.length(); b++)
+				counts.set(b, 0);
+			total.reset();
+			sum.reset();
+			max.reset();
+		}
+	}
+
+	private static final int MAX_DEPTH = 256; // deeper goes in the last slot
+
+	private final PrefixMap map;
+	private final boolean probe; // countPrefixes around each write, for maps that don't report
+	private final Histogram[] latency = new Histogram[Operation.values().length];
+	private final LongAdder[] rejected = new LongAdder[Operation.values().length];
+	private final LongAdder allocated = new LongAdder(), pruned = new LongAdder();
+	private final AtomicLongArray keysAt = new AtomicLongArray(MAX_DEPTH + 1),
+				forksAt = new AtomicLongArray(MAX_DEPTH + 1),
+				prunesAt = new AtomicLongArray(MAX_DEPTH + 1);
+	private ObjectName registered = null;
+
+	/*
+	 * countNodes only matters for maps other than PrefixTree (see above)
+	 */
+	public InstrumentedPrefixMap(PrefixMap map, boolean countNodes) {
+		if (map == null) throw new IllegalArgumentException("null map");
+		this.map = map;
+		for (int i = 0; i < latency.length; i++) {
+			latency[i] = new Histogram();
+			rejected[i] = new LongAdder();
+		}
+		if (map instanceof PrefixTree)
+			((PrefixTree) map).setBranchListener(this::branch);
+		probe = countNodes && !(map instanceof PrefixTree);
+	}
+
+	public InstrumentedPrefixMap(PrefixMap map) { this(map, false); }
+
+	private static int depth(int depth) { return Math.min(depth, MAX_DEPTH); }
+
+	private void done(Operation op, long start) { latency[op.ordinal()].record(System.nanoTime() - start); }
+
+	private void reject(Operation op) { rejected[op.ordinal()].increment(); }
+
+	private void branch(int depth, int nodes) {
+		if (nodes > 0) { // the new branch hangs off the node at this depth
+			allocated.add(nodes);
+			forksAt.incrementAndGet(depth(depth));
+		} else { // and the one that went hung off this one
+			pruned.add(-nodes);
+			prunesAt.incrementAndGet(depth(depth));
+		}
+	}
+
+	private void probed(String key, int nodes) {
+		if (nodes != 0)
+			branch(key.length() - Math.abs(nodes), nodes);
+	}
+
+	/***************************************************************************
+	 * PrefixMap
+	 ***************************************************************************/
+	@Override
+	public boolean isEmpty() { return map.isEmpty(); }
+	@Override
+	public int size() { return map.size(); }
+	@Override
+	public int countPrefixes() { return map.countPrefixes(); }
+	@Override
+	public int sumKeyLengths() { return map.sumKeyLengths(); }
+
+	@Override
+	public String get(String key) {
+		long start = System.nanoTime();
+		try {
+			return map.get(key);
+		} catch (MalformedKeyException e) {
+			reject(Operation.GET);
+			throw e;
+		} finally {
+			done(Operation.GET, start);
+		}
+	}
+	@Override
+	public String put(String key, String value) {
+		int before = probe ? map.countPrefixes() : 0; // not timed
+		long start = System.nanoTime();
+		String prev;
+		try {
+			prev = map.put(key, value);
+		} catch (MalformedKeyException e) {
+			reject(Operation.PUT);
+			throw e;
+		} finally {
+			done(Operation.PUT, start);
+		}
+		if (prev == null)
+			keysAt.incrementAndGet(depth(key.length()));
+		if (probe)
+			probed(key, map.countPrefixes() - before);
+		return prev;
+	}
+	@Override
+	public String remove(String key) {
+		int before = probe ? map.countPrefixes() : 0;
+		long start = System.nanoTime();
+		String prev;
+		try {
+			prev = map.remove(key);
+		} catch (MalformedKeyException e) {
+			reject(Operation.REMOVE);
+			throw e;
+		} finally {
+			done(Operation.REMOVE, start);
+		}
+		if (prev != null)
+			keysAt.decrementAndGet(depth(key.length()));
+		if (probe)
+			probed(key, map.countPrefixes() - before);
+		return prev;
+	}
+	@Override
+	public int countKeysMatchingPrefix(String prefix) {
+		long start = System.nanoTime();
+		try {
+			return map.countKeysMatchingPrefix(prefix);
+		} catch (MalformedKeyException e) {
+			reject(Operation.COUNT_KEYS_MATCHING_PREFIX);
+			throw e;
+		} finally {
+			done(Operation.COUNT_KEYS_MATCHING_PREFIX, start);
+		}
+	}
+	@Override
+	public List<String> getKeysMatchingPrefix(String prefix) {
+		long start = System.nanoTime();
+		try {
+			return map.getKeysMatchingPrefix(prefix);
+		} catch (MalformedKeyException e) {
+			reject(Operation.GET_KEYS_MATCHING_PREFIX);
+			throw e;
+		} finally {
+			done(Operation.GET_KEYS_MATCHING_PREFIX, start);
+		}
+	}
+
+	/***************************************************************************
+	 * Reading the numbers
+	 ***************************************************************************/
+	public PrefixMap unwrap() { return map; }
+
+	public long count(Operation op) { return latency[op.ordinal()].count(); }
+	public long rejected(Operation op) { return rejected[op.ordinal()].sum(); }
+	public long percentileNanos(Operation op, double fraction) { return latency[op.ordinal()].percentile(fraction); }
+	public long nodesAllocated() { return allocated.sum(); }
+	public long nodesPruned() { return pruned.sum(); }
+	/*
+	 * Children gained minus children lost by nodes at the depth (the last one
+	 * is everything from MAX_DEPTH down)
+	 */
+	public long netForksAt(int depth) { return forksAt.get(depth(depth)) - prunesAt.get(depth(depth)); }
+
+	public void reset() {
+		for (int i = 0; i < latency.length; i++) {
+			latency[i].reset();
+			rejected[i].reset();
+		}
+		allocated.reset();
+		pruned.reset();
+		for (int d = 0; d <= MAX_DEPTH; d++) {
+			keysAt.set(d, 0);
+			forksAt.set(d, 0);
+			prunesAt.set(d, 0);
+		}
+	}
+
+	public String dump() {
+
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("%-28s %10s %9s %10s %10s %10s %10s %10s%n",
+				"operation", "count", "rejected", "mean ns", "p50 ns", "p99 ns", "p99.9 ns", "max ns"));
+		for (Operation op : Operation.values()) {
+			Histogram h = latency[op.ordinal()];
+			sb.append(String.format("%-28s %10d %9d %10.0f %10d %10d %10d %10d%n", op, h.count(), rejected(op),
+					h.mean(), h.percentile(0.5), h.percentile(0.99), h.percentile(0.999), h.max()));
+		}
+		sb.append(String.format("size %d, prefixes %d, nodes allocated %d, pruned %d%n",
+				map.size(), map.countPrefixes(), nodesAllocated(), nodesPruned()));
+
+		sb.append(String.format("%-6s %10s %10s %10s%n", "depth", "keys", "forks", "prunes"));
+		for (int d = 0; d <= MAX_DEPTH; d++)
+			if (keysAt.get(d) != 0 || forksAt.get(d) != 0 || prunesAt.get(d) != 0)
+				sb.append(String.format("%-6s %10d %10d %10d%n", d == MAX_DEPTH ? d + "+" : d,
+						keysAt.get(d), forksAt.get(d), prunesAt.get(d)));
+		return sb.toString();
+	}
+	@Override
+	public String toString() { return dump(); }
+
+	/***************************************************************************
+	 * JMX
+	 ***************************************************************************/
+	public interface MetricsMXBean {
+		int getSize();
+		int getPrefixes();
+		long getNodesAllocated();
+		long getNodesPruned();
+		Map<String, Long> getCounts();
+		Map<String, Long> getRejected();
+		Map<String, Long> getP50Nanos();
+		Map<String, Long> getP99Nanos();
+		Map<String, Long> getMaxNanos();
+		String dump();
+		void reset();
+	}
+
+	private class Metrics implements MetricsMXBean {
+		public int getSize() { return map.size(); }
+		public int getPrefixes() { return map.countPrefixes(); }
+		public long getNodesAllocated() { return nodesAllocated(); }
+		public long getNodesPruned() { return nodesPruned(); }
+		public Map<String, Long> getCounts() { return perOperation(op -> count(op)); }
+		public Map<String, Long> getRejected() { return perOperation(op -> rejected(op)); }
+		public Map<String, Long> getP50Nanos() { return perOperation(op -> percentileNanos(op, 0.5)); }
+		public Map<String, Long> getP99Nanos() { return perOperation(op -> percentileNanos(op, 0.99)); }
+		public Map<String, Long> getMaxNanos() { return perOperation(op -> latency[op.ordinal()].max()); }
+		public String dump() { return InstrumentedPrefixMap.this.dump(); }
+		public void reset() { InstrumentedPrefixMap.this.reset(); }
+
+		private Map<String, Long> perOperation(ToLongFunction<Operation> value) {
+			Map<String, Long> values = new LinkedHashMap<>();
+			for (Operation op : Operation.values())
+				values.put(op.name(), value.applyAsLong(op));
+			return values;
+		}
+	}
+
+	/*
+	 * Registers with the platform MBean server as PrefixMap:type=Metrics,name=<name>
+	 */
+	public synchronized ObjectName register(String name) throws JMException {
+		unregister();
+		ObjectName objectName = ObjectName.getInstance("PrefixMap:type=Metrics,name=" + ObjectName.quote(name));
+		ManagementFactory.getPlatformMBeanServer().registerMBean(new StandardMBean(new Metrics(), MetricsMXBean.class, true), objectName);
+		registered = objectName;
+		return objectName;
+	}
+
+	public synchronized void unregister() throws JMException {
+		if (registered == null)
+			return;
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		if (server.isRegistered(registered))
+			server.unregisterMBean(registered);
+		registered = null;
+	}
+}
@@ -0,0 +1,141 @@
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+public class InstrumentedPrefixMapTest extends BasicTest {
+
+	@Override
+	protected PrefixMap create() { return new InstrumentedPrefixMap(new PrefixTree("ACTG")); }
+
+	@Test
+	public void testCounts() {
+		InstrumentedPrefixMap m = new InstrumentedPrefixMap(new PrefixTree("ACTG"));
+		m.put("GATTACA", "movie");
+		m.put("GAT", "tag");
+		m.put("GAT", "tag again");
+		m.get("GAT");
+		m.get("CAT");
+		m.getKeysMatchingPrefix("GA");
+		try {
+			m.get("GATXACA");
+			fail();
+		} catch (MalformedKeyException e) {}
+
+		assertEquals(3, m.count(InstrumentedPrefixMap.Operation.PUT));
+		assertEquals(3, m.count(InstrumentedPrefixMap.Operation.GET));
+		assertEquals(1, m.rejected(InstrumentedPrefixMap.Operation.GET));
+		assertEquals(1, m.count(InstrumentedPrefixMap.Operation.GET_KEYS_MATCHING_PREFIX));
+		assertEquals(0, m.count(InstrumentedPrefixMap.Operation.REMOVE));
+		assertTrue(m.percentileNanos(InstrumentedPrefixMap.Operation.GET, 0.5) > 0);
+
+		m.reset();
+		assertEquals(0, m.count(InstrumentedPrefixMap.Operation.PUT));
+		assertEquals(0, m.rejected(InstrumentedPrefixMap.Operation.GET));
+	}
+
+	@Test
+	public void testDepths() {
+		InstrumentedPrefixMap m = new InstrumentedPrefixMap(new PrefixTree("ACTG"));
+		m.put("GATTACA", "movie"); // 7 new nodes off the root
+		m.put("GATC", "x"); // forks at GAT
+		m.put("GA", "ag"); // nothing new
+		assertEquals(8, m.nodesAllocated());
+		assertEquals(1, m.netForksAt(0));
+		assertEquals(1, m.netForksAt(3));
+		assertEquals(0, m.netForksAt(2));
+
+		m.remove("GATTACA"); // TACA goes, it hung off GAT
+		assertEquals(4, m.nodesPruned());
+		assertEquals(0, m.netForksAt(3));
+		assertEquals(m.countPrefixes(), m.nodesAllocated() - m.nodesPruned());
+		assertTrue(m.dump().contains("GET_KEYS_MATCHING_PREFIX"));
+	}
+
+	@Test
+	public void testHistogramBuckets() {
+		for (long v : new long[] { 0, 1, 7, 8, 9, 15, 16, 1000, 123456789, Long.MAX_VALUE }) {
+			int b = InstrumentedPrefixMap.Histogram.bucket(v);
+			long low = InstrumentedPrefixMap.Histogram.lowest(b);
+			assertTrue(low <= v);
+			assertTrue(v - low <= low / 8);
+			assertEquals(b, InstrumentedPrefixMap.Histogram.bucket(low));
+		}
+		InstrumentedPrefixMap.Histogram h = new InstrumentedPrefixMap.Histogram();
+		for (int i = 1; i <= 100; i++)
+			h.record(i);
+		assertEquals(100, h.count());
+		assertEquals(100, h.max());
+		assertEquals(48, h.percentile(0.5)); // 50 is in [48, 52)
+	}
+
+	@Test
+	public void testMBean() throws Exception {
+		InstrumentedPrefixMap m = new InstrumentedPrefixMap(new PrefixTree("ACTG"));
+		ObjectName name = m.register("test");
+		try {
+			m.put("GATTACA", "movie");
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			assertEquals(1, server.getAttribute(name, "Size"));
+			assertEquals(7L, server.getAttribute(name, "NodesAllocated"));
+			assertNotNull(server.getAttribute(name, "Counts"));
+			assertTrue(((String) server.invoke(name, "dump", null, null)).contains("PUT"));
+		} finally {
+			m.unregister();
+		}
+		assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+	}
+
+	@Test
+	public void testNoCountingOnTheWay() {
+		int[] calls = { 0 };
+		PrefixTree t = new PrefixTree("ACTG") {
+			@Override
+			public int countPrefixes() { calls[0]++; return super.countPrefixes(); }
+		};
+		InstrumentedPrefixMap m = new InstrumentedPrefixMap(t, true); // the tree reports, nothing to count
+		m.put("GATTACA", "movie");
+		m.put("GATC", "x");
+		m.remove("GATTACA");
+		t.compute("CAT", (k, v) -> "meow"); // straight on the tree, still heard
+		assertEquals(0, calls[0]);
+		assertEquals(7 + 1 + 3, m.nodesAllocated());
+		assertEquals(4, m.nodesPruned()); // TACA, it hung off GAT
+		assertEquals(2, m.netForksAt(0));
+	}
+	
+	@Test
+	public void testCountNodes() {
+		InstrumentedPrefixMap quiet = new InstrumentedPrefixMap(new RadixTree("ACTG")),
+				counting = new InstrumentedPrefixMap(new RadixTree("ACTG"), true);
+		for (InstrumentedPrefixMap m : new InstrumentedPrefixMap[] { quiet, counting }) {
+			m.put("GATTACA", "movie");
+			m.put("GATC", "x");
+			m.remove("GATTACA");
+			assertEquals(3, m.count(InstrumentedPrefixMap.Operation.PUT) + m.count(InstrumentedPrefixMap.Operation.REMOVE));
+		}
+		assertEquals(0, quiet.nodesAllocated()); // no numbers without asking
+		assertEquals(8, counting.nodesAllocated());
+		assertEquals(4, counting.nodesPruned());
+		assertEquals(1, counting.netForksAt(0));
+		assertEquals(0, counting.netForksAt(3));
+	}
+	
+	@Test
+	public void testSwitchedOff() {
+		PrefixMap t = new PrefixTree("ACTG");
+		String old = System.setProperty("prefixmap.instrument", "false");
+		try {
+			assertSame(t, InstrumentedPrefixMap.instrument(t));
+		} finally {
+			if (old == null)
+				System.clearProperty("prefixmap.instrument");
+			else
+				System.setProperty("prefixmap.instrument", old);
+		}
+		assertTrue(InstrumentedPrefixMap.instrument(t) instanceof InstrumentedPrefixMap);
+	}
+}
@@ -0,0 +1,91 @@
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/******************************************************************************
+ * Set of non-negative ints, open addressing with linear probing in a single
+ * int array (-1 = empty), so no boxing and no entry objects
+ *
+ * Starts at 2 slots, most of the sets in a prefix index hold one or two ids
+ *
+ * Removal shifts the rest of the probe run back instead of leaving
+ * tombstones, so sets that churn don't fill up with dead slots
+ ******************************************************************************/
+public class IntHashSet {
+
+	private static final int EMPTY = -1;
+
+	private int[] slots = { EMPTY, EMPTY };
+	private int size = 0;
+
+	public int size() { return size; }
+
+	private int home(int value) { return (value * 0x9E3779B9 >>> 1) & (slots.length - 1); }
+
+	public boolean contains(int value) {
+		for (int i = home(value); slots[i] != EMPTY; i = (i + 1) & (slots.length - 1))
+			if (slots[i] == value)
+				return true;
+		return false;
+	}
+
+	public boolean add(int value) {
+		if (value < 0) throw new IllegalArgumentException("negative value");
+		if ((size + 1) * 4 > slots.length * 3)
+			resize(slots.length * 2);
+
+		int i = home(value);
+		for (; slots[i] != EMPTY; i = (i + 1) & (slots.length - 1))
+			if (slots[i] == value)
+				return false;
+		slots[i] = value;
+		size++;
+		return true;
+	}
+
+	public boolean remove(int value) {
+
+		int mask = slots.length - 1, i = home(value);
+		for (; slots[i] != value; i = (i + 1) & mask)
+			if (slots[i] == EMPTY)
+				return false;
+
+		// pull back anything later in the run that could live in the hole
+		for (int j = (i + 1) & mask; slots[j] != EMPTY; j = (j + 1) & mask) {
+			int h = home(slots[j]);
+			if (((j - h) & mask) >= ((j - i) & mask)) {
+				slots[i] = slots[j];
+				i = j;
+			}
+		}
+		slots[i] = EMPTY;
+		size--;
+		return true;
+	}
+
+	/*
+	 * Some value in the set, -1 if it is empty
+	 */
+	public int any() {
+		if (size > 0)
+			for (int value : slots)
+				if (value != EMPTY)
+					return value;
+		return EMPTY;
+	}
+
+	public void forEach(IntConsumer action) {
+		for (int value : slots)
+			if (value != EMPTY)
+				action.accept(value);
+	}
+
+	private void resize(int capacity) {
+		int[] old = slots;
+		slots = new int[capacity];
+		Arrays.fill(slots, EMPTY);
+		size = 0;
+		for (int value : old)
+			if (value != EMPTY)
+				add(value);
+	}
+}
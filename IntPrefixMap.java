@@ -0,0 +1,266 @@
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.function.ObjLongConsumer;
+
+/******************************************************************************
+ * PrefixTree with a primitive long in every node instead of a String, for
+ * counts (k-mer frequencies and the like) and ids (see InterningPrefixMap)
+ *
+ * No boxing and no value objects anywhere, a key costs its nodes and nothing
+ * else. Otherwise the same as PrefixTree: count per subtrie, parent pointers
+ * so removal prunes on the way back up, keys come out in sorted order
+ *
+ * Methods that have no value to return (get of a missing key, put of a new
+ * one, remove of a missing one) return the absent value given to the
+ * constructor, 0 by default, so a count table can just get() without
+ * checking first. containsKey tells the two apart when it matters
+ ******************************************************************************/
+public class IntPrefixMap {
+
+	private static final Node[] NO_CHILDREN = new Node[0];
+
+	private static final class Node {
+		/**********************************************
+		 *  ______________ ____________ ______________
+		 * | parent, key  | value long | count int    |
+		 * |______________| hasValue   |______________|
+		 * | children: Node[], exactly as many as     |
+		 * | there are, sorted by their own key       |
+		 * |__________________________________________|
+		 *
+		 * One array per node and no spare slots, most
+		 * nodes are in chains with a single child
+		 **********************************************/
+		long value = 0;
+		boolean hasValue = false;
+		int count = 0; // values in this node and everything below it
+		final Node parent;
+		final char key;
+		Node[] children = NO_CHILDREN;
+
+		Node(Node parent, char key) { this.parent = parent; this.key = key; }
+
+		/*
+		 * Slot of the child with the key, or -(insertion point) - 1
+		 */
+		int find(char key) {
+			int low = 0, high = children.length - 1;
+			while (low <= high) {
+				int mid = (low + high) >>> 1;
+				char k = children[mid].key;
+				if (k == key)
+					return mid;
+				if (k < key)
+					low = mid + 1;
+				else
+					high = mid - 1;
+			}
+			return -low - 1;
+		}
+
+		Node getChild(char key) {
+			int i = find(key);
+			return i < 0 ? null : children[i];
+		}
+
+		Node addChild(char key) {
+			int i = -find(key) - 1;
+			Node[] c = new Node[children.length + 1];
+			System.arraycopy(children, 0, c, 0, i);
+			System.arraycopy(children, i, c, i + 1, children.length - i);
+			c[i] = new Node(this, key);
+			children = c;
+			return c[i];
+		}
+
+		void removeChild(char key) {
+			int i = find(key);
+			if (children.length == 1) {
+				children = NO_CHILDREN;
+				return;
+			}
+			Node[] c = new Node[children.length - 1];
+			System.arraycopy(children, 0, c, 0, i);
+			System.arraycopy(children, i + 1, c, i, c.length - i);
+			children = c;
+		}
+
+		boolean isDead() { return !hasValue && children.length == 0; }
+	}
+
+	private final Alphabet ALPHABET;
+	private final long absent;
+	private final Node root = new Node(null, '\0');
+	private int size = 0,
+				keySum = 0,
+				numNodes = 1;
+
+	public IntPrefixMap(String validChars, long absent) {
+		ALPHABET = new Alphabet(validChars);
+		this.absent = absent;
+	}
+
+	public IntPrefixMap(String validChars) { this(validChars, 0); }
+
+	public IntPrefixMap() { this("ACGT"); }
+
+	public long absentValue() { return absent; }
+
+	public boolean isEmpty() { return size == 0; }
+	public int size() { return size; }
+	public int countPrefixes() { return numNodes - 1; }
+	public int sumKeyLengths() { return keySum; }
+
+	public boolean containsKey(String key) {
+		Node pos = traverse(root, key, ALPHABET);
+		return pos != null && pos.hasValue;
+	}
+
+	public long get(String key) {
+		Node pos = traverse(root, key, ALPHABET);
+		return pos == null || !pos.hasValue ? absent : pos.value;
+	}
+
+	/*
+	 * Returns the previous value, or the absent value if the key is new
+	 */
+	public long put(String key, long value) {
+
+		ALPHABET.verify(key);
+		Node pos = root;
+		for (int i = 0; i < key.length(); i++) {
+			Node next = pos.getChild(key.charAt(i));
+			if (next == null) {
+				next = pos.addChild(key.charAt(i));
+				numNodes++;
+			}
+			pos = next;
+		}
+
+		long prev = pos.hasValue ? pos.value : absent;
+		if (!pos.hasValue) {
+			pos.hasValue = true;
+			size++;
+			keySum += key.length();
+			for (Node n = pos; n != null; n = n.parent)
+				n.count++;
+		}
+		pos.value = value;
+		return prev;
+	}
+
+	/*
+	 * Adds delta to the key's value (a new key starts from 0) in one walk down,
+	 * returns the new value. Allocates nothing unless the key needs new nodes
+	 */
+	public long increment(String key, long delta) {
+
+		if (key == null) throw new IllegalArgumentException("null key");
+		Node pos = root;
+		int i = 0;
+		for (Node next; i < key.length() && (next = pos.getChild(key.charAt(i))) != null; i++)
+			pos = next;
+		ALPHABET.verify(key, i);
+		for (; i < key.length(); i++) {
+			pos = pos.addChild(key.charAt(i));
+			numNodes++;
+		}
+
+		if (!pos.hasValue) {
+			pos.hasValue = true;
+			pos.value = 0;
+			size++;
+			keySum += key.length();
+			for (Node n = pos; n != null; n = n.parent)
+				n.count++;
+		}
+		return pos.value += delta;
+	}
+
+	/*
+	 * Returns the value the key had, or the absent value if it wasn't there
+	 */
+	public long remove(String key) {
+
+		Node pos = traverse(root, key, ALPHABET);
+		if (pos == null || !pos.hasValue)
+			return absent;
+
+		long prev = pos.value;
+		pos.hasValue = false;
+		pos.value = 0;
+		size--;
+		keySum -= key.length();
+		for (Node n = pos; n != null; n = n.parent)
+			n.count--;
+		for (Node n = pos; n != root && n.isDead(); n = n.parent) {
+			n.parent.removeChild(n.key);
+			numNodes--;
+		}
+		return prev;
+	}
+
+	private static Node traverse(Node from, String path, Alphabet alphabet) {
+
+		if (path == null) throw new IllegalArgumentException("null key");
+		Node cur = from;
+
+		int i = 0;
+		for (Node next; i < path.length() && (next = cur.getChild(path.charAt(i))) != null; i++)
+			cur = next; // getChild doesn't check the character, the miss (and the rest) are verified below
+
+		alphabet.verify(path, i);
+		return i == path.length() ? cur : null;
+	}
+
+	public int countKeysMatchingPrefix(String prefix) {
+		Node subtrie = traverse(root, prefix, ALPHABET);
+		return subtrie == null ? 0 : subtrie.count;
+	}
+
+	public List<String> getKeysMatchingPrefix(String prefix) {
+		List<String> keys = new ArrayList<>();
+		forEachMatchingPrefix(prefix, (key, value) -> keys.add(key));
+		return keys;
+	}
+	/**************************************************************************************
+	 * Every key starting with the prefix and its value, in sorted order, explicit stack
+	 * (children are pushed backwards so they come off in order) and a single char buffer
+	 **************************************************************************************/
+	public void forEachMatchingPrefix(String prefix, ObjLongConsumer<String> action) {
+
+		Node subtrie = traverse(root, prefix, ALPHABET);
+		if (subtrie == null)
+			return;
+
+		int base = prefix.length();
+		char[] buf = Arrays.copyOf(prefix.toCharArray(), base + 16);
+		Node[] stack = new Node[16];
+		int[] depths = new int[16];
+		int top = 0;
+
+		stack[top] = subtrie;
+		depths[top++] = base;
+		while (top > 0) {
+			Node cur = stack[--top];
+			int depth = depths[top];
+			if (depth > base) {
+				if (depth > buf.length)
+					buf = Arrays.copyOf(buf, depth * 2);
+				buf[depth - 1] = cur.key;
+			}
+			if (cur.hasValue)
+				action.accept(new String(buf, 0, depth), cur.value);
+
+			for (int i = cur.children.length - 1; i >= 0; i--) {
+				if (top == stack.length) {
+					stack = Arrays.copyOf(stack, top * 2);
+					depths = Arrays.copyOf(depths, top * 2);
+				}
+				stack[top] = cur.children[i];
+				depths[top++] = depth + 1;
+			}
+		}
+	}
+}
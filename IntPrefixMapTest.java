@@ -0,0 +1,108 @@
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+public class IntPrefixMapTest {
+	
+	@Test
+	public void testBasics() {
+		IntPrefixMap m = new IntPrefixMap("ACTG");
+		assertTrue(m.isEmpty());
+		assertEquals(0, m.put("GATTACA", 5));
+		assertEquals(5, m.put("GATTACA", 7));
+		assertEquals(0, m.put("GAT", 0));
+		assertEquals(7, m.get("GATTACA"));
+		assertEquals(0, m.get("GATT"));
+		assertTrue(m.containsKey("GAT"));
+		assertFalse(m.containsKey("GATT"));
+		assertEquals(2, m.size());
+		assertEquals(7, m.countPrefixes());
+		assertEquals(10, m.sumKeyLengths());
+		assertEquals(Arrays.asList("GAT", "GATTACA"), m.getKeysMatchingPrefix("G"));
+		
+		assertEquals(7, m.remove("GATTACA"));
+		assertEquals(0, m.remove("GATTACA"));
+		assertEquals(3, m.countPrefixes());
+		assertEquals(1, m.countKeysMatchingPrefix(""));
+	}
+	
+	@Test
+	public void testAbsentValue() {
+		IntPrefixMap m = new IntPrefixMap("ACTG", Long.MIN_VALUE);
+		assertEquals(Long.MIN_VALUE, m.get("A"));
+		assertEquals(Long.MIN_VALUE, m.put("A", Long.MAX_VALUE));
+		assertEquals(Long.MAX_VALUE, m.remove("A"));
+		assertEquals(Long.MIN_VALUE, m.remove("A"));
+	}
+	
+	@Test(expected = MalformedKeyException.class)
+	public void testMalformed() { new IntPrefixMap("ACTG").put("GAX", 1); }
+	
+	@Test
+	public void testMalformedLookups() {
+		IntPrefixMap m = new IntPrefixMap("ACTG");
+		m.put("CAT", 1);
+		for (String key : new String[] { "\u00e9", "A\u00e9", "CAX", "CATX", "X" }) {
+			try {
+				m.get(key);
+				fail(key);
+			} catch (MalformedKeyException e) {}
+			try {
+				m.containsKey(key);
+				fail(key);
+			} catch (MalformedKeyException e) {}
+			try {
+				m.remove(key);
+				fail(key);
+			} catch (MalformedKeyException e) {}
+			try {
+				m.countKeysMatchingPrefix(key);
+				fail(key);
+			} catch (MalformedKeyException e) {}
+			try {
+				m.forEachMatchingPrefix(key, (k, v) -> {});
+				fail(key);
+			} catch (MalformedKeyException e) {}
+		}
+		assertEquals(1, m.size());
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testNullKey() { new IntPrefixMap("ACTG").get(null); }
+	
+	@Test
+	public void testKmerCounts() {
+		IntPrefixMap m = new IntPrefixMap("ACGT");
+		TreeMap<String, Long> checker = new TreeMap<>();
+		Random RNG = new Random(3);
+		char[] genome = new char[20000];
+		for (int i = 0; i < genome.length; i++)
+			genome[i] = "ACGT".charAt(RNG.nextInt(4));
+		for (int i = 0; i + 6 <= genome.length; i++) {
+			String kmer = new String(genome, i, 6);
+			m.put(kmer, m.get(kmer) + 1);
+			checker.merge(kmer, 1L, Long::sum);
+		}
+		for (int i = 0; i < 2000; i++) {
+			String kmer = new String(genome, RNG.nextInt(genome.length - 6), 6);
+			assertEquals(checker.getOrDefault(kmer, 0L).longValue(), m.remove(kmer));
+			checker.remove(kmer);
+		}
+		
+		assertEquals(checker.size(), m.size());
+		List<String> keys = new ArrayList<>();
+		List<Long> counts = new ArrayList<>();
+		m.forEachMatchingPrefix("", (key, count) -> {
+			keys.add(key);
+			counts.add(count);
+		});
+		assertEquals(new ArrayList<>(checker.keySet()), keys);
+		assertEquals(new ArrayList<>(checker.values()), counts);
+		assertEquals(checker.subMap("GA", "GC").size(), m.countKeysMatchingPrefix("GA"));
+	}
+}
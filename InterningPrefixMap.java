@@ -0,0 +1,85 @@
+import java.util.List;
+
+/******************************************************************************
+ * PrefixMap whose nodes hold an int id instead of a String reference, the
+ * values themselves live once each in a ValuePool
+ *
+ *   keys -> IntPrefixMap (id per key) -> ValuePool (id -> "exon", ...)
+ *
+ * Pays off when a few distinct values are spread over a lot of keys
+ * (annotations, labels), equal values put separately end up as one String.
+ * get() hands back the pooled String, so equal values come out as the same
+ * object too. Maps can share a pool, it keeps a value as long as any key in
+ * any of them has it
+ ******************************************************************************/
+public class InterningPrefixMap implements PrefixMap {
+
+	private static final long NONE = -1;
+
+	private final Alphabet ALPHABET;
+	private final IntPrefixMap ids;
+	private final ValuePool pool;
+
+	public InterningPrefixMap(String validChars, ValuePool pool) {
+		if (pool == null) throw new IllegalArgumentException("null pool");
+		ALPHABET = new Alphabet(validChars);
+		ids = new IntPrefixMap(validChars, NONE);
+		this.pool = pool;
+	}
+
+	public InterningPrefixMap(String validChars) { this(validChars, new ValuePool()); }
+
+	public InterningPrefixMap() { this("ACGT"); }
+
+	public ValuePool pool() { return pool; }
+
+	@Override
+	public boolean isEmpty() { return ids.isEmpty(); }
+	@Override
+	public int size() { return ids.size(); }
+	@Override
+	public int countPrefixes() { return ids.countPrefixes(); }
+	@Override
+	public int sumKeyLengths() { return ids.sumKeyLengths(); }
+
+	@Override
+	public String get(String key) {
+		long id = ids.get(key);
+		return id == NONE ? null : pool.get((int) id);
+	}
+	@Override
+	public String put(String key, String value) {
+
+		if (value == null) {
+			ALPHABET.verify(key); // a bad key wins, like everywhere else
+			throw new IllegalArgumentException();
+		}
+		int id = pool.intern(value);
+		long prev;
+		try {
+			prev = ids.put(key, id);
+		} catch (RuntimeException e) { // bad key, the reference was never used
+			pool.release(id);
+			throw e;
+		}
+		if (prev == NONE)
+			return null;
+		String old = pool.get((int) prev);
+		pool.release((int) prev);
+		return old;
+	}
+	@Override
+	public String remove(String key) {
+		long prev = ids.remove(key);
+		if (prev == NONE)
+			return null;
+		String old = pool.get((int) prev);
+		pool.release((int) prev);
+		return old;
+	}
+
+	@Override
+	public int countKeysMatchingPrefix(String prefix) { return ids.countKeysMatchingPrefix(prefix); }
+	@Override
+	public List<String> getKeysMatchingPrefix(String prefix) { return ids.getKeysMatchingPrefix(prefix); }
+}
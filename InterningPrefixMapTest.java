@@ -0,0 +1,71 @@
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class InterningPrefixMapTest extends BasicTest {
+	
+	@Override
+	protected PrefixMap create() { return new InterningPrefixMap("ACTG"); }
+	
+	@Test
+	public void testPooled() {
+		InterningPrefixMap m = new InterningPrefixMap("ACTG");
+		m.put("GATTACA", new String("exon"));
+		m.put("GAT", new String("exon"));
+		m.put("CAT", "intron");
+		assertSame(m.get("GATTACA"), m.get("GAT"));
+		assertEquals(2, m.pool().size());
+		assertEquals(2, m.pool().references("exon"));
+		
+		assertEquals("intron", m.put("CAT", "exon"));
+		assertEquals(0, m.pool().references("intron"));
+		assertEquals(1, m.pool().size());
+		assertEquals("exon", m.remove("GAT"));
+		assertEquals(2, m.pool().references("exon"));
+		m.remove("GATTACA");
+		m.remove("CAT");
+		assertEquals(0, m.pool().size());
+	}
+	
+	@Test
+	public void testMalformedLookups() {
+		InterningPrefixMap m = new InterningPrefixMap("ACTG");
+		m.put("CAT", "meow");
+		for (String key : new String[] { "\u00e9", "A\u00e9", "CAX", "CATX", "X" }) {
+			try {
+				m.get(key);
+				fail(key);
+			} catch (MalformedKeyException e) {}
+			try {
+				m.remove(key);
+				fail(key);
+			} catch (MalformedKeyException e) {}
+			try {
+				m.countKeysMatchingPrefix(key);
+				fail(key);
+			} catch (MalformedKeyException e) {}
+			try {
+				m.getKeysMatchingPrefix(key);
+				fail(key);
+			} catch (MalformedKeyException e) {}
+		}
+		assertEquals(1, m.pool().references("meow"));
+	}
+	
+	@Test
+	public void testSharedPool() {
+		ValuePool pool = new ValuePool();
+		InterningPrefixMap a = new InterningPrefixMap("ACTG", pool), b = new InterningPrefixMap("ACGT", pool);
+		a.put("A", "x");
+		b.put("C", new String("x"));
+		assertSame(a.get("A"), b.get("C"));
+		a.remove("A");
+		assertEquals("x", b.get("C"));
+		assertEquals(1, pool.references("x"));
+		
+		try {
+			a.put("AXA", "y");
+			fail();
+		} catch (MalformedKeyException e) {}
+		assertEquals(0, pool.references("y")); // nothing left behind
+	}
+}
@@ -0,0 +1,67 @@
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+public class LayoutTest {
+
+	/*
+	 * One node (A) going through every layout and back, it takes one more
+	 * child than fits to shrink so it doesn't flip flop on the boundary
+	 */
+	@Test
+	public void testGrowAndShrink() {
+		String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789";
+		PrefixTree t = new PrefixTree(alphabet);
+		t.put("A", "stays");
+		List<String> children = new ArrayList<>();
+		for (int i = 0; i < alphabet.length(); i++)
+			children.add("A" + alphabet.charAt(i));
+		Collections.shuffle(children, new Random(9));
+		
+		List<String> expected = new ArrayList<>();
+		for (String child : children) {
+			t.put(child, "v");
+			expected.add(child);
+			int n = expected.size();
+			checkLayout(t, n, n <= 16 ? PrefixTreeStats.Layout.SPARSE : n <= 48 ? PrefixTreeStats.Layout.INDEXED
+					: PrefixTreeStats.Layout.DIRECT);
+			checkChildren(t, expected);
+		}
+		Collections.shuffle(children, new Random(10));
+		for (String child : children) {
+			assertEquals("v", t.remove(child));
+			expected.remove(child);
+			int n = expected.size();
+			checkLayout(t, n, n == 0 ? PrefixTreeStats.Layout.LEAF : n < 16 ? PrefixTreeStats.Layout.SPARSE
+					: n < 48 ? PrefixTreeStats.Layout.INDEXED : PrefixTreeStats.Layout.DIRECT);
+			checkChildren(t, expected);
+		}
+		assertEquals(1, t.countPrefixes());
+	}
+	
+	/*
+	 * The root always has just A, A's children are all leaves
+	 */
+	private static void checkLayout(PrefixTree t, int n, PrefixTreeStats.Layout a) {
+		PrefixTreeStats s = t.stats();
+		for (PrefixTreeStats.Layout layout : PrefixTreeStats.Layout.values()) {
+			long expected = (layout == PrefixTreeStats.Layout.SPARSE ? 1 : 0) + (layout == PrefixTreeStats.Layout.LEAF ? n : 0)
+					+ (layout == a ? 1 : 0);
+			assertEquals(n + " children, " + layout, expected, s.nodes(layout));
+		}
+	}
+	
+	private static void checkChildren(PrefixTree t, List<String> expected) {
+		List<String> sorted = new ArrayList<>(expected);
+		Collections.sort(sorted);
+		sorted.add(0, "A");
+		assertEquals(sorted, t.getKeysMatchingPrefix("A"));
+		assertEquals(sorted.size(), t.countKeysMatchingPrefix("A"));
+		for (String child : expected)
+			assertEquals("v", t.get(child));
+	}
+}
@@ -0,0 +1,302 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/******************************************************************************
+ * Read-only PrefixMap answered straight from a memory mapped snapshot file,
+ * opening one is just an mmap (nothing is read or rebuilt up front)
+ *
+ * Snapshot layout (big endian):
+ *  ______________________________________________________________________
+ * | header: magic, version, alphabet, size, keySum, numNodes, poolBytes  |
+ * |______________________________________________________________________|
+ * | nodes, breadth first (root first), fixed size records:               |
+ * |  ______________ ____________ ___________ ___________________________ |
+ * | | firstChild   | value      | count     | child bitmap              ||
+ * | | (node index) | (pool      | (keys in  | (bit per alphabet index,  ||
+ * | |              | offset, -1)|  subtrie) |  padded to 4 bytes)       ||
+ * | |______________|____________|___________|___________________________||
+ * |______________________________________________________________________|
+ * | string pool: (length, UTF-16 chars) for every distinct value         |
+ * |______________________________________________________________________|
+ *
+ * Breadth first order puts all the children of a node next to each other,
+ * so the child with index i is firstChild + (number of bits below i)
+ ******************************************************************************/
+public class MappedPrefixMap implements PrefixMap {
+
+	private static final int MAGIC = 0x50545331, // "PTS1"
+				VERSION = 1;
+	private static final int FIRST_CHILD = 0, VALUE = 4, COUNT = 8, BITMAP = 12;
+	private static final int CHUNK_BYTES = 1 << 30;
+	static final long MAX_POOL_BYTES = Integer.MAX_VALUE - 8; // pool offsets are ints, and it's built in one array
+
+	private final Alphabet alphabet;
+	private final int size, keySum, numNodes;
+	private final int recordBytes, recordsPerChunk;
+	private final ByteBuffer[] nodes; // whole records per chunk, mappings are limited to 2GB
+	private final ByteBuffer pool;
+
+	/***************************************************************************
+	 * Writing
+	 ***************************************************************************/
+	public static void write(PrefixTree tree, Path file) throws IOException { write(tree, file, MAX_POOL_BYTES); }
+
+	/*
+	 * Throws IOException once the distinct values need more than poolLimit
+	 * bytes (checked before each one goes in, DataOutputStream.size()
+	 * would just stop counting at Integer.MAX_VALUE)
+	 */
+	static void write(PrefixTree tree, Path file, long poolLimit) throws IOException {
+
+		Alphabet alphabet = tree.alphabet();
+		int bitmapBytes = bitmapBytes(alphabet.size());
+
+		ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+		DataOutputStream pool = new DataOutputStream(poolBytes);
+		HashMap<String, Integer> pooled = new HashMap<>(); // the same values are usually all over the tree
+		long poolSize = 0;
+
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))) {
+
+			int numNodes = tree.countPrefixes() + 1;
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(alphabet.size());
+			out.writeChars(alphabet.chars());
+			out.writeInt(tree.size());
+			out.writeInt(tree.sumKeyLengths());
+			out.writeInt(numNodes);
+
+			byte[] bitmap = new byte[bitmapBytes];
+			ArrayDeque<PrefixTree.Node> queue = new ArrayDeque<>();
+			queue.add(tree.root());
+			int next = 1; // index the next child will get
+
+			while (!queue.isEmpty()) {
+				PrefixTree.Node node = queue.poll();
+
+				Arrays.fill(bitmap, (byte) 0);
+				int firstChild = next;
+				for (PrefixTree.Node child = node.nextChild(0); child != null; child = child.nextSibling()) {
+					int index = alphabet.index(child.key);
+					bitmap[index >>> 3] |= 1 << (index & 7);
+					queue.add(child);
+					next++;
+				}
+
+				int value = -1;
+				if (node.getValue() != null) {
+					Integer at = pooled.get(node.getValue());
+					if (at == null) {
+						long bytes = 4 + 2L * node.getValue().length();
+						if (poolSize + bytes > poolLimit) throw new IOException("string pool over " + poolLimit + " bytes");
+						at = (int) poolSize;
+						poolSize += bytes;
+						pool.writeInt(node.getValue().length());
+						pool.writeChars(node.getValue());
+						pooled.put(node.getValue(), at);
+					}
+					value = at;
+				}
+
+				out.writeInt(firstChild);
+				out.writeInt(value);
+				out.writeInt(node.count);
+				out.write(bitmap);
+			}
+			if (next != numNodes) throw new IllegalStateException("node count is off");
+
+			pool.flush();
+			out.writeInt(poolBytes.size());
+			poolBytes.writeTo(out);
+		}
+	}
+
+	private static int bitmapBytes(int alphabetSize) { return ((alphabetSize + 31) / 32) * 4; }
+
+	/***************************************************************************
+	 * Reading
+	 ***************************************************************************/
+	public static MappedPrefixMap open(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			return new MappedPrefixMap(channel);
+		}
+	}
+
+	private MappedPrefixMap(FileChannel channel) throws IOException {
+
+		ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(channel.size(), 1 << 20));
+		if (header.getInt() != MAGIC || header.getInt() != VERSION)
+			throw new IOException("not a prefix tree snapshot");
+
+		char[] chars = new char[header.getInt()];
+		for (int i = 0; i < chars.length; i++)
+			chars[i] = header.getChar();
+		alphabet = new Alphabet(new String(chars));
+		size = header.getInt();
+		keySum = header.getInt();
+		numNodes = header.getInt();
+
+		recordBytes = BITMAP + bitmapBytes(alphabet.size());
+		recordsPerChunk = CHUNK_BYTES / recordBytes;
+		long at = header.position();
+
+		nodes = new ByteBuffer[(numNodes + recordsPerChunk - 1) / recordsPerChunk];
+		for (int i = 0; i < nodes.length; i++) {
+			long bytes = (long) Math.min(recordsPerChunk, numNodes - i * recordsPerChunk) * recordBytes;
+			nodes[i] = channel.map(FileChannel.MapMode.READ_ONLY, at, bytes);
+			at += bytes;
+		}
+
+		MappedByteBuffer poolSize = channel.map(FileChannel.MapMode.READ_ONLY, at, 4);
+		at += 4;
+		pool = channel.map(FileChannel.MapMode.READ_ONLY, at, poolSize.getInt());
+	}
+
+	private int read(int node, int field) {
+		return nodes[node / recordsPerChunk].getInt((node % recordsPerChunk) * recordBytes + field);
+	}
+
+	/*
+	 * Node index of the child with the given alphabet index, -1 if none
+	 */
+	private int child(int node, int index) {
+
+		ByteBuffer chunk = nodes[node / recordsPerChunk];
+		int bitmap = (node % recordsPerChunk) * recordBytes + BITMAP;
+
+		int word = chunk.getInt(bitmap + (index >>> 5) * 4);
+		int bit = Integer.reverseBytes(word) >>> (index & 31) & 1; // bytes were written in index order
+		if (bit == 0)
+			return -1;
+
+		int rank = 0;
+		for (int w = 0; w < index >>> 5; w++)
+			rank += Integer.bitCount(chunk.getInt(bitmap + w * 4));
+		rank += Integer.bitCount(Integer.reverseBytes(word) & ((1 << (index & 31)) - 1));
+		return read(node, FIRST_CHILD) + rank;
+	}
+
+	private String value(int node) {
+		int at = read(node, VALUE);
+		if (at < 0)
+			return null;
+		char[] chars = new char[pool.getInt(at)];
+		for (int i = 0; i < chars.length; i++)
+			chars[i] = pool.getChar(at + 4 + 2 * i);
+		return new String(chars);
+	}
+
+	private int traverse(String path) {
+
+		if (path == null) throw new IllegalArgumentException("null key");
+		int cur = 0;
+
+		int i = 0;
+		for (; i < path.length() && cur >= 0; i++)
+			cur = child(cur, alphabet.index(path.charAt(i)));
+
+		alphabet.verify(path, i);
+		return cur;
+	}
+
+	/***************************************************************************
+	 * PrefixMap
+	 ***************************************************************************/
+	@Override
+	public boolean isEmpty() { return size == 0; }
+	@Override
+	public int size() { return size; }
+	@Override
+	public int countPrefixes() { return numNodes - 1; }
+	@Override
+	public int sumKeyLengths() { return keySum; }
+
+	@Override
+	public String get(String key) {
+		int node = traverse(key);
+		return node < 0 ? null : value(node);
+	}
+
+	@Override
+	public String put(String key, String value) { throw new UnsupportedOperationException("read only snapshot"); }
+
+	@Override
+	public String remove(String key) { throw new UnsupportedOperationException("read only snapshot"); }
+
+	@Override
+	public int countKeysMatchingPrefix(String prefix) {
+		int node = traverse(prefix);
+		return node < 0 ? 0 : read(node, COUNT);
+	}
+
+	@Override
+	public List<String> getKeysMatchingPrefix(String prefix) {
+		List<String> keys = new ArrayList<>();
+		walk(prefix, false, (key, value) -> keys.add(key));
+		return keys;
+	}
+
+	/*
+	 * Every key starting with the prefix and its value, in sorted order
+	 */
+	public void forEachMatchingPrefix(String prefix, BiConsumer<String, String> action) { walk(prefix, true, action); }
+
+	/*
+	 * Values are only read from the pool if they're wanted, null otherwise
+	 */
+	private void walk(String prefix, boolean values, BiConsumer<String, String> action) {
+
+		int subtrie = traverse(prefix);
+		if (subtrie < 0)
+			return;
+
+		// no parent pointers in the file, so an explicit stack (children pushed backwards)
+		int base = prefix.length();
+		char[] buf = Arrays.copyOf(prefix.toCharArray(), base + 16);
+		int[] stack = new int[16], depths = new int[16];
+		char[] chars = new char[16];
+		int top = 0;
+		stack[top] = subtrie;
+		depths[top++] = base;
+
+		while (top > 0) {
+			int node = stack[--top], depth = depths[top];
+			if (depth > base) {
+				if (depth > buf.length)
+					buf = Arrays.copyOf(buf, depth * 2);
+				buf[depth - 1] = chars[top];
+			}
+			if (read(node, VALUE) >= 0)
+				action.accept(new String(buf, 0, depth), values ? value(node) : null);
+
+			for (int i = alphabet.size() - 1; i >= 0; i--) {
+				int child = child(node, i);
+				if (child < 0)
+					continue;
+				if (top == stack.length) {
+					stack = Arrays.copyOf(stack, top * 2);
+					depths = Arrays.copyOf(depths, top * 2);
+					chars = Arrays.copyOf(chars, top * 2);
+				}
+				stack[top] = child;
+				depths[top] = depth + 1;
+				chars[top++] = alphabet.charAt(i);
+			}
+		}
+	}
+}
@@ -1,6 +1,7 @@
 import org.junit.Test;
 import static org.junit.Assert.*;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Random;
@@ -8,7 +9,63 @@ import java.util.Random;
 public class NonDeterministicTest {
 	
 	@Test
-	public void bigTest() {
+	public void bigTest() { bigTest(new PrefixTree("ACTG")); }
+	
+	@Test
+	public void bigRadixTest() { bigTest(new RadixTree("ACTG")); }
+	
+	@Test
+	public void bigOffHeapTest() { bigTest(new OffHeapPrefixTree("ACTG")); }
+	
+	@Test
+	public void bigPersistentTest() { bigTest(new PersistentPrefixTree("ACTG")); }
+	
+	@Test
+	public void bigInterningTest() { bigTest(new InterningPrefixMap("ACTG")); }
+	
+	@Test
+	public void bigShardedTest() { bigTest(new ShardedPrefixMap("ACTG", 2)); }
+	
+	/*
+	 * Keys far deeper than a recursive walk could go on the default stack
+	 */
+	@Test
+	public void longKeyTest() {
+		for (PrefixMap t : new PrefixMap[] { new PrefixTree("ACTG"), new RadixTree("ACTG"), new OffHeapPrefixTree("ACTG"),
+				new PersistentPrefixTree("ACTG"), new ConcurrentPrefixTree("ACTG") })
+			longKeyTest(t);
+	}
+	
+	private static void longKeyTest(PrefixMap tester) {
+		Random RNG = new Random(6);
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 100000; i++)
+			sb.append(chooseBase(RNG));
+		String longest = sb.toString(),
+				prefix = longest.substring(0, 50000),
+				branch = prefix + (longest.charAt(50000) == 'A' ? "C" : "A") + longest.substring(50001);
+		
+		assertNull(tester.put(longest, "longest"));
+		assertNull(tester.put(branch, "branch"));
+		assertNull(tester.put(prefix, "prefix"));
+		assertEquals(3, tester.size());
+		assertEquals(150000, tester.countPrefixes());
+		assertEquals("branch", tester.get(branch));
+		assertEquals(3, tester.countKeysMatchingPrefix(""));
+		assertEquals(sorted(Arrays.asList(longest, branch, prefix)), tester.getKeysMatchingPrefix(""));
+		assertEquals(Arrays.asList(longest), tester.getKeysMatchingPrefix(longest.substring(0, 50001)));
+		if (tester instanceof StreamingPrefixMap)
+			assertEquals(3, ((StreamingPrefixMap) tester).streamKeysMatchingPrefix(prefix).count());
+		
+		assertEquals("longest", tester.remove(longest));
+		assertEquals("prefix", tester.remove(prefix));
+		assertEquals(100000, tester.countPrefixes());
+		assertEquals("branch", tester.remove(branch));
+		assertTrue(tester.isEmpty());
+		assertEquals(0, tester.countPrefixes());
+	}
+	
+	private static void bigTest(PrefixMap tester) {
 		Random RNG = new Random();
 		StringBuilder sb = new StringBuilder();
 		String[] keys = new String[10000];
@@ -17,8 +74,7 @@ public class NonDeterministicTest {
 			sb.append(chooseBase(RNG));
 		}
 		
-		PrefixMap checker = new HMbasedPrefixMap("ACTG"), 
-				tester = new PrefixTree("ACTG");
+		PrefixMap checker = new HMbasedPrefixMap("ACTG");
 		
 		for (int i = 0; i < keys.length; i++) {
 			double num = RNG.nextDouble();
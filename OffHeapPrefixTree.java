@@ -0,0 +1,351 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/******************************************************************************
+ * PrefixTree with the nodes and values outside the Java heap, so the GC has
+ * nothing to trace no matter how big the tree gets
+ *
+ * Nodes are fixed size slots in direct buffers, addressed by int slot numbers:
+ *  ________ _______ _______ _______ _____________________________
+ * | parent | value | count |  key  | children : slot per index   |
+ * | (slot) | (ref) |       |(index)| (0 = none, root is slot 0)  |
+ * |________|_______|_______|_______|_____________________________|
+ *
+ * Pruned slots go on a free list (threaded through the parent field) and are
+ * handed out again before the arena grows
+ *
+ * Values are UTF-16 records in 1MB value pages, referenced by an int
+ * (page << 20 | offset, 0 = no value). Records are rounded up to a power of
+ * two and freed ones are kept on a list per size for the next value that
+ * size, so replacing or removing values doesn't leak
+ *  _________ ________ ______________
+ * | log2(   | length | chars ...    |
+ * |  size)  |        |              |
+ * |_________|________|______________|
+ *
+ * Direct buffers are released when the tree itself is garbage collected
+ ******************************************************************************/
+public class OffHeapPrefixTree implements PrefixMap {
+
+	private static final int PARENT = 0, VALUE = 1, COUNT = 2, KEY = 3, CHILDREN = 4;
+	private static final int ROOT = 0, NONE = 0, NO_SLOT = -1;
+	private static final int CHUNK_BITS = 16, CHUNK_SLOTS = 1 << CHUNK_BITS;
+	private static final int PAGE_BITS = 20, PAGE_SIZE = 1 << PAGE_BITS, MAX_PAGES = 1 << (31 - PAGE_BITS);
+	private static final int RECORD_HEADER = 8, MIN_RECORD_BITS = 4;
+
+	private final Alphabet ALPHABET;
+	private final int slotBytes;
+
+	private ByteBuffer[] chunks = new ByteBuffer[4];
+	private int numChunks = 0,
+				nextSlot = 0, // never handed out yet
+				freeSlot = NO_SLOT; // head of the free list
+
+	private final ArrayList<ByteBuffer> pages = new ArrayList<>();
+	private int page, pageTop; // page being filled (records too big for a page get their own) and its used bytes
+	private final int[] freeRecords = new int[32]; // per log2(size), 0 = empty
+
+	private int size = 0,
+				keySum = 0,
+				numNodes = 0;
+
+	public OffHeapPrefixTree(String validChars) {
+		ALPHABET = new Alphabet(validChars);
+		slotBytes = (CHILDREN + ALPHABET.size()) * 4;
+		if ((long) slotBytes * CHUNK_SLOTS > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("too many characters");
+		allocateNode(NO_SLOT, 0); // the root
+		page = newPage(PAGE_SIZE);
+		pageTop = 1 << MIN_RECORD_BITS; // so ref 0 is never a record
+	}
+
+	public OffHeapPrefixTree() { this("ACGT"); }
+
+	/***************************************************************************
+	 * Footprint
+	 ***************************************************************************/
+	/*
+	 * Bytes reserved outside the heap (node arena and value pages)
+	 */
+	public long offHeapBytes() { return (long) numChunks * CHUNK_SLOTS * slotBytes + valueBytes(); }
+
+	/*
+	 * Bytes of the arena that hold live nodes
+	 */
+	public long nodeBytes() { return (long) numNodes * slotBytes; }
+
+	/*
+	 * Bytes of the value pages (allocated, whether in use or on a free list)
+	 */
+	public long valueBytes() {
+		long total = 0;
+		for (ByteBuffer page : pages)
+			total += page.capacity();
+		return total;
+	}
+
+	@Override
+	public boolean isEmpty() { return size == 0; }
+	@Override
+	public int size() { return size; }
+	@Override
+	public int countPrefixes() { return numNodes - 1; }
+	@Override
+	public int sumKeyLengths() { return keySum; }
+
+	/***************************************************************************
+	 * Node arena
+	 ***************************************************************************/
+	private int read(int slot, int field) {
+		return chunks[slot >>> CHUNK_BITS].getInt((slot & (CHUNK_SLOTS - 1)) * slotBytes + field * 4);
+	}
+
+	private void write(int slot, int field, int value) {
+		chunks[slot >>> CHUNK_BITS].putInt((slot & (CHUNK_SLOTS - 1)) * slotBytes + field * 4, value);
+	}
+
+	private int child(int slot, int index) { return read(slot, CHILDREN + index); }
+
+	private int allocateNode(int parent, int key) {
+
+		int slot;
+		if (freeSlot != NO_SLOT) {
+			slot = freeSlot;
+			freeSlot = read(slot, PARENT);
+		} else {
+			if (nextSlot >>> CHUNK_BITS == numChunks) {
+				if (numChunks == chunks.length)
+					chunks = Arrays.copyOf(chunks, numChunks * 2);
+				chunks[numChunks++] = ByteBuffer.allocateDirect(CHUNK_SLOTS * slotBytes).order(ByteOrder.nativeOrder());
+			}
+			slot = nextSlot++;
+		}
+
+		for (int field = 0; field < CHILDREN + ALPHABET.size(); field++)
+			write(slot, field, 0);
+		write(slot, PARENT, parent);
+		write(slot, KEY, key);
+		numNodes++;
+		return slot;
+	}
+
+	private void freeNode(int slot) {
+		write(slot, PARENT, freeSlot);
+		freeSlot = slot;
+		numNodes--;
+	}
+
+	private int getOrCreateChild(int slot, int index) {
+		int child = child(slot, index);
+		if (child == NONE) {
+			child = allocateNode(slot, index);
+			write(slot, CHILDREN + index, child);
+		}
+		return child;
+	}
+
+	/*
+	 * first child with an index >= from (or NONE)
+	 */
+	private int nextChild(int slot, int from) {
+		for (int i = from; i < ALPHABET.size(); i++) {
+			int child = child(slot, i);
+			if (child != NONE)
+				return child;
+		}
+		return NONE;
+	}
+
+	private int nextSibling(int slot) { return nextChild(read(slot, PARENT), read(slot, KEY) + 1); }
+
+	/***************************************************************************
+	 * Value pages
+	 ***************************************************************************/
+	private ByteBuffer page(int ref) { return pages.get(ref >>> PAGE_BITS); }
+	private static int offset(int ref) { return ref & (PAGE_SIZE - 1); }
+
+	private String readValue(int ref) {
+		ByteBuffer page = page(ref);
+		int at = offset(ref);
+		char[] chars = new char[page.getInt(at + 4)];
+		for (int i = 0; i < chars.length; i++)
+			chars[i] = page.getChar(at + RECORD_HEADER + 2 * i);
+		return new String(chars);
+	}
+
+	private int writeValue(String value) {
+
+		long bytes = RECORD_HEADER + 2L * value.length();
+		int bits = Math.max(MIN_RECORD_BITS, 64 - Long.numberOfLeadingZeros(bytes - 1));
+		if (bits > 30) throw new IllegalArgumentException("value too long");
+
+		int ref = freeRecords[bits];
+		if (ref != 0) {
+			freeRecords[bits] = page(ref).getInt(offset(ref) + 4); // next on the list
+		} else {
+			ref = allocateRecord(1 << bits);
+		}
+
+		ByteBuffer page = page(ref);
+		int at = offset(ref);
+		page.putInt(at, bits);
+		page.putInt(at + 4, value.length());
+		for (int i = 0; i < value.length(); i++)
+			page.putChar(at + RECORD_HEADER + 2 * i, value.charAt(i));
+		return ref;
+	}
+
+	private int allocateRecord(int bytes) {
+
+		if (bytes > PAGE_SIZE) // gets a page of its own
+			return newPage(bytes) << PAGE_BITS;
+
+		if (PAGE_SIZE - pageTop < bytes) {
+			page = newPage(PAGE_SIZE);
+			pageTop = 0;
+		}
+		int ref = page << PAGE_BITS | pageTop;
+		pageTop += bytes;
+		return ref;
+	}
+
+	private int newPage(int bytes) {
+		if (pages.size() == MAX_PAGES) throw new IllegalStateException("value pages full");
+		pages.add(ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder()));
+		return pages.size() - 1;
+	}
+
+	private void freeValue(int ref) {
+		ByteBuffer page = page(ref);
+		int bits = page.getInt(offset(ref));
+		page.putInt(offset(ref) + 4, freeRecords[bits]);
+		freeRecords[bits] = ref;
+	}
+
+	/***************************************************************************
+	 * PrefixMap
+	 ***************************************************************************/
+	/*
+	 * Slot of the node for the path, NO_SLOT if there isn't one
+	 */
+	private int traverse(String path) {
+
+		if (path == null) throw new IllegalArgumentException("null key");
+		int cur = ROOT;
+
+		int i = 0;
+		for (; i < path.length() && cur != NO_SLOT; i++) {
+			int next = child(cur, ALPHABET.index(path.charAt(i)));
+			cur = next == NONE ? NO_SLOT : next;
+		}
+
+		ALPHABET.verify(path, i);
+		return cur;
+	}
+
+	@Override
+	public String get(String key) {
+
+		int pos = traverse(key);
+		if (pos == NO_SLOT)
+			return null;
+		int ref = read(pos, VALUE);
+		return ref == 0 ? null : readValue(ref);
+	}
+	@Override
+	public String put(String key, String value) {
+
+		if (key == null) throw new IllegalArgumentException("null key");
+		if (value == null) throw new IllegalArgumentException();
+
+		int pos = ROOT, i = 0;
+		for (int next; i < key.length() && (next = child(pos, ALPHABET.index(key.charAt(i)))) != NONE; i++)
+			pos = next;
+
+		ALPHABET.verify(key, i);
+		for (; i < key.length(); i++)
+			pos = getOrCreateChild(pos, ALPHABET.index(key.charAt(i)));
+
+		int prevRef = read(pos, VALUE);
+		String prev = null;
+		if (prevRef != 0) {
+			prev = readValue(prevRef);
+			freeValue(prevRef);
+		} else {
+			keySum += key.length();
+			size++;
+			for (int n = pos; n != NO_SLOT; n = read(n, PARENT))
+				write(n, COUNT, read(n, COUNT) + 1);
+		}
+		write(pos, VALUE, writeValue(value));
+		return prev;
+	}
+	@Override
+	public String remove(String key) {
+
+		int pos = traverse(key);
+		if (pos == NO_SLOT || read(pos, VALUE) == 0)
+			return null;
+
+		int ref = read(pos, VALUE);
+		String prev = readValue(ref);
+		freeValue(ref);
+		write(pos, VALUE, 0);
+		keySum -= key.length();
+		size--;
+
+		// take the key off the counts, pruning whatever ends up empty
+		for (int n = pos, child = NONE; n != NO_SLOT; child = n, n = read(n, PARENT)) {
+			if (child != NONE && read(child, COUNT) == 0) {
+				write(n, CHILDREN + read(child, KEY), NONE);
+				freeNode(child);
+			}
+			write(n, COUNT, read(n, COUNT) - 1);
+		}
+		return prev;
+	}
+
+	@Override
+	public int countKeysMatchingPrefix(String prefix) {
+
+		int subtrie = traverse(prefix);
+		return subtrie == NO_SLOT ? 0 : read(subtrie, COUNT);
+	}
+	@Override
+	public List<String> getKeysMatchingPrefix(String prefix) {
+
+		List<String> keys = new ArrayList<>();
+		int subtrie = traverse(prefix);
+		if (subtrie == NO_SLOT)
+			return keys;
+
+		int depth = prefix.length();
+		char[] buf = Arrays.copyOf(prefix.toCharArray(), depth + 16);
+
+		// pre-order through the parent slots, same as PrefixTree
+		int cur = subtrie;
+		if (read(cur, VALUE) != 0)
+			keys.add(new String(buf, 0, depth));
+		while (true) {
+			int next = nextChild(cur, 0);
+			while (next == NONE && cur != subtrie) {
+				next = nextSibling(cur);
+				depth--;
+				if (next == NONE)
+					cur = read(cur, PARENT);
+			}
+			if (next == NONE)
+				return keys;
+
+			cur = next;
+			if (depth == buf.length)
+				buf = Arrays.copyOf(buf, depth * 2);
+			buf[depth++] = ALPHABET.charAt(read(cur, KEY));
+			if (read(cur, VALUE) != 0)
+				keys.add(new String(buf, 0, depth));
+		}
+	}
+}
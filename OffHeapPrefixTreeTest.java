@@ -0,0 +1,51 @@
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class OffHeapPrefixTreeTest extends BasicTest {
+	
+	@Override
+	protected PrefixMap create() { return new OffHeapPrefixTree("ACTG"); }
+	
+	@Test
+	public void testFreedSpaceIsReused() {
+		OffHeapPrefixTree t = new OffHeapPrefixTree("ACTG");
+		String[] keys = new String[20000];
+		for (int i = 0; i < keys.length; i++)
+			keys[i] = Integer.toString(i, 4).replace('0', 'A').replace('1', 'C').replace('2', 'G').replace('3', 'T');
+		
+		for (String key : keys)
+			assertNull(t.put(key, "value of " + key));
+		long footprint = t.offHeapBytes();
+		long nodes = t.nodeBytes();
+		
+		for (String key : keys)
+			assertEquals("value of " + key, t.remove(key));
+		assertEquals(0, t.countPrefixes());
+		
+		// same again, everything should come off the free lists
+		for (String key : keys)
+			assertNull(t.put(key, "value of " + key));
+		assertEquals(footprint, t.offHeapBytes());
+		assertEquals(nodes, t.nodeBytes());
+		
+		// and replacing values shouldn't leak either
+		for (String key : keys)
+			assertEquals("value of " + key, t.put(key, "VALUE OF " + key));
+		assertEquals(footprint, t.offHeapBytes());
+		assertEquals("VALUE OF CAT", t.get("CAT"));
+	}
+	
+	@Test
+	public void testHugeValue() {
+		OffHeapPrefixTree t = new OffHeapPrefixTree("ACTG");
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 1 << 20; i++)
+			sb.append((char) ('a' + i % 26));
+		String big = sb.toString();
+		
+		assertNull(t.put("GAT", big));
+		assertNull(t.put("GATTACA", "small"));
+		assertEquals(big, t.get("GAT"));
+		assertEquals("small", t.get("GATTACA"));
+	}
+}
@@ -0,0 +1,123 @@
+/******************************************************************************
+ * Packs keys into long words at the fewest bits per character the alphabet
+ * allows, 2 bits (32 bases per word) for the usual A, C, G, T
+ *
+ *  word:  63                                                  0
+ *        |c0|c1|c2| ...                                 |c31|
+ *
+ * First character in the highest bits, so the first difference between two
+ * words is found with a single xor and numberOfLeadingZeros. Bits past the
+ * end of a sequence are always zero.
+ *
+ * The arrays don't know their own length, callers keep track of it
+ ******************************************************************************/
+public final class PackedSequence {
+
+	private final Alphabet alphabet;
+	private final int bits, // per character
+				perWord, // characters per word
+				pad; // unused low bits in each word
+	private final long used; // mask of the bits holding characters
+
+	public PackedSequence(Alphabet alphabet) {
+		this.alphabet = alphabet;
+		bits = Math.max(1, 32 - Integer.numberOfLeadingZeros(alphabet.size() - 1));
+		perWord = 64 / bits;
+		pad = 64 - perWord * bits;
+		used = -1L << pad;
+	}
+
+	public int bitsPerChar() { return bits; }
+
+	public int words(int length) { return (length + perWord - 1) / perWord; }
+
+	/*
+	 * Packs the whole key, throws MalformedKeyException on any non-valid
+	 * character (and IllegalArgumentException for null)
+	 */
+	public long[] encode(String key) {
+		if (key == null) throw new IllegalArgumentException("null key");
+
+		long[] out = new long[words(key.length())];
+		for (int i = 0; i < key.length(); i++)
+			out[i / perWord] |= (long) alphabet.index(key.charAt(i)) << shift(i);
+		return out;
+	}
+	/*
+	 * Unpacks length characters starting at from into out[at...]
+	 */
+	public void decode(long[] seq, int from, int length, char[] out, int at) {
+		for (int i = 0; i < length; i++)
+			out[at + i] = alphabet.charAt(get(seq, from + i));
+	}
+
+	/*
+	 * Alphabet index of the i'th character
+	 */
+	public int get(long[] seq, int i) {
+		return (int) (seq[i / perWord] >>> shift(i)) & ((1 << bits) - 1);
+	}
+
+	private int shift(int i) { return 64 - bits * (i % perWord + 1); }
+
+	/*
+	 * perWord characters starting at from, lined up as if they were a word
+	 * of their own (zeros past the end of the array)
+	 */
+	private long window(long[] seq, int from) {
+		int w = from / perWord, s = from % perWord;
+		long w0 = w < seq.length ? seq[w] : 0;
+		if (s == 0)
+			return w0;
+		long w1 = w + 1 < seq.length ? seq[w + 1] : 0;
+		return ((w0 << (bits * s)) | (w1 >>> (bits * (perWord - s)))) & used;
+	}
+	/*
+	 * Keeps the first n characters of the word
+	 */
+	private long keep(long word, int n) {
+		if (n >= perWord) return word & used;
+		if (n <= 0) return 0;
+		return word & (-1L << (64 - n * bits));
+	}
+
+	/*
+	 * Length of the common prefix of a[aFrom...] and b[bFrom...], at most
+	 * length, comparing a word at a time
+	 */
+	public int mismatch(long[] a, int aFrom, long[] b, int bFrom, int length) {
+		for (int i = 0; i < length; i += perWord) {
+			long diff = window(a, aFrom + i) ^ window(b, bFrom + i);
+			if (diff != 0)
+				return Math.min(length, i + Long.numberOfLeadingZeros(diff) / bits);
+		}
+		return length;
+	}
+
+	/*
+	 * Copy of the characters from (inclusive) to to (exclusive)
+	 */
+	public long[] slice(long[] seq, int from, int to) {
+		long[] out = new long[words(to - from)];
+		for (int j = 0; j < out.length; j++)
+			out[j] = keep(window(seq, from + j * perWord), to - from - j * perWord);
+		return out;
+	}
+
+	/*
+	 * a (aLength characters) followed by b (bLength characters)
+	 */
+	public long[] concat(long[] a, int aLength, long[] b, int bLength) {
+		long[] out = new long[words(aLength + bLength)];
+		System.arraycopy(a, 0, out, 0, words(aLength));
+
+		int s = aLength % perWord, done = 0;
+		if (s != 0) { // top up the last word of a
+			out[aLength / perWord] |= (keep(window(b, 0), bLength) >>> (bits * s)) & used;
+			done = perWord - s;
+		}
+		for (int j = words(aLength + done); done < bLength; j++, done += perWord)
+			out[j] = keep(window(b, done), bLength - done);
+		return out;
+	}
+}
@@ -0,0 +1,85 @@
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class PackedSequenceTest {
+	
+	static final String DNA = "ACGT",
+			AMINO_ACIDS = "ACDEFGHIKLMNPQRSTVWY"; // 20, 5 bits, 12 per word and 4 bits spare
+	static final String ASCII; // 95, 7 bits, 9 per word and 1 bit spare
+	static {
+		StringBuilder sb = new StringBuilder();
+		for (char c = ' '; c <= '~'; c++)
+			sb.append(c);
+		ASCII = sb.toString();
+	}
+	
+	@Test
+	public void testBitsPerChar() {
+		assertEquals(2, new PackedSequence(new Alphabet(DNA)).bitsPerChar());
+		assertEquals(3, new PackedSequence(new Alphabet("ACGTN")).bitsPerChar());
+		assertEquals(5, new PackedSequence(new Alphabet(AMINO_ACIDS)).bitsPerChar());
+		assertEquals(7, new PackedSequence(new Alphabet(ASCII)).bitsPerChar());
+	}
+	
+	@Test
+	public void testDna() { checkAll(DNA); }
+	
+	@Test
+	public void testThreeBits() { checkAll("ACGTN"); }
+	
+	@Test
+	public void testAminoAcids() { checkAll(AMINO_ACIDS); }
+	
+	@Test
+	public void testAscii() { checkAll(ASCII); }
+	
+	/*
+	 * Every operation against the same thing done on Strings, for lengths
+	 * around and across word boundaries. Comparing whole arrays also checks
+	 * that the bits past the end (and the spare ones) are zero
+	 */
+	private static void checkAll(String chars) {
+		Random RNG = new Random(4);
+		PackedSequence packing = new PackedSequence(new Alphabet(chars));
+		for (int n = 0; n < 200; n++) {
+			String a = random(chars, RNG.nextInt(40), RNG),
+					b = random(chars, RNG.nextInt(40), RNG);
+			long[] pa = packing.encode(a), pb = packing.encode(b);
+			
+			char[] decoded = new char[a.length()];
+			packing.decode(pa, 0, a.length(), decoded, 0);
+			assertEquals(a, new String(decoded));
+			
+			for (int from = 0; from <= a.length(); from++)
+				for (int to = from; to <= a.length(); to++)
+					assertArrayEquals(a + " " + from + " " + to, packing.encode(a.substring(from, to)), packing.slice(pa, from, to));
+			
+			assertArrayEquals(a + " " + b, packing.encode(a + b), packing.concat(pa, a.length(), pb, b.length()));
+			
+			String shared = a + b;
+			long[] ps = packing.encode(shared);
+			for (int from = 0; from <= a.length(); from++) // a different offset on each side
+				assertEquals(a.length() - from, packing.mismatch(pa, from, packing.encode(a.substring(from)), 0, a.length() - from));
+			assertEquals(b.length(), packing.mismatch(ps, a.length(), pb, 0, b.length()));
+			if (shared.isEmpty())
+				continue;
+			
+			// a copy with one change, mismatch has to find it from anywhere before it
+			int at = RNG.nextInt(shared.length());
+			char other = chars.charAt((chars.indexOf(shared.charAt(at)) + 1) % chars.length());
+			long[] changed = packing.encode(shared.substring(0, at) + other + shared.substring(at + 1));
+			for (int from = 0; from <= at; from++)
+				assertEquals(at - from, packing.mismatch(ps, from, changed, from, shared.length() - from));
+			assertEquals(shared.length() - at - 1, packing.mismatch(ps, at + 1, changed, at + 1, shared.length() - at - 1));
+		}
+	}
+	
+	private static String random(String chars, int length, Random RNG) {
+		char[] s = new char[length];
+		for (int i = 0; i < length; i++)
+			s[i] = chars.charAt(RNG.nextInt(chars.length()));
+		return new String(s);
+	}
+}
@@ -0,0 +1,41 @@
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+public class ParallelQueryTest {
+	
+	@Test
+	public void testSameAsSequential() {
+		Random RNG = new Random(7);
+		PrefixTree t = new PrefixTree("ACTG");
+		String common = "GATTACA";
+		for (int i = 0; i < 50000; i++) {
+			StringBuilder sb = new StringBuilder(i % 3 == 0 ? common : "");
+			for (int j = RNG.nextInt(16); j > 0; j--)
+				sb.append(NonDeterministicTest.BASES[RNG.nextInt(4)]);
+			t.put(sb.toString(), "");
+		}
+		
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			for (String prefix : Arrays.asList("", "G", "GATT", "GATTACAC", "TTTTTTTTTTTTTTTTTTTTTT")) {
+				assertEquals(t.getKeysMatchingPrefix(prefix), t.getKeysMatchingPrefixParallel(prefix, pool));
+				assertEquals(t.getKeysMatchingPrefix(prefix), t.getKeysMatchingPrefixParallel(prefix));
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+	
+	@Test
+	public void testInvalidPrefix() {
+		PrefixTree t = new PrefixTree("ACTG");
+		try {
+			t.getKeysMatchingPrefixParallel("AX");
+			fail("expected MalformedKeyException");
+		} catch (MalformedKeyException x) {}
+	}
+}
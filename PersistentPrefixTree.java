@@ -0,0 +1,289 @@
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/******************************************************************************
+ * PrefixTree where nothing is ever changed in place (path copying)
+ *
+ * A put or remove copies the nodes from the root down to the key and leaves
+ * everything else shared, then publishes the new root in one volatile write.
+ * A version is the root plus the counters, so snapshot() just hands out the
+ * current one:
+ *
+ *    version 1        version 2 (after put "AT")
+ *      root              root'
+ *      /  \              /  \
+ *     A    C  <------   A'   |  (C shared)
+ *     |                 | \  |
+ *     G  <------------- |  T |
+ *
+ * Readers never lock and never see a half done change, a scan of a snapshot
+ * gives the same answer however long it takes and whatever the writers do.
+ * Old versions are just garbage once nobody holds them.
+ *
+ * Writers are serialised on the tree (they would have to be anyway, each one
+ * starts from the version the last one made)
+ ******************************************************************************/
+public class PersistentPrefixTree implements PrefixMap {
+
+	private static final char[] NO_KEYS = new char[0];
+	private static final Node[] NO_CHILDREN = new Node[0];
+
+	private static final class Node {
+		/**********************************************
+		 * Immutable, so no parent pointers (a node can
+		 * be in any number of versions). Children are
+		 * sorted by their key, which lives in the
+		 * parent: keys[i] leads to children[i]
+		 **********************************************/
+		final String value;
+		final int count; // keys in this node and everything below it
+		final char[] keys;
+		final Node[] children;
+
+		Node(String value, int count, char[] keys, Node[] children) {
+			this.value = value;
+			this.count = count;
+			this.keys = keys;
+			this.children = children;
+		}
+
+		Node getChild(char key) {
+			int i = Arrays.binarySearch(keys, key);
+			return i < 0 ? null : children[i];
+		}
+
+		boolean isDead() { return value == null && keys.length == 0; }
+
+		Node withValue(String v, int countChange) { return new Node(v, count + countChange, keys, children); }
+
+		/*
+		 * Copy with the child for key replaced (or added, or taken out if child is null)
+		 */
+		Node withChild(char key, Node child, int countChange) {
+
+			int i = Arrays.binarySearch(keys, key);
+			char[] k;
+			Node[] c;
+			if (i >= 0 && child != null) {
+				k = keys;
+				c = children.clone();
+				c[i] = child;
+			} else if (i >= 0) {
+				k = new char[keys.length - 1];
+				c = new Node[keys.length - 1];
+				System.arraycopy(keys, 0, k, 0, i);
+				System.arraycopy(keys, i + 1, k, i, k.length - i);
+				System.arraycopy(children, 0, c, 0, i);
+				System.arraycopy(children, i + 1, c, i, c.length - i);
+			} else {
+				i = -i - 1;
+				k = new char[keys.length + 1];
+				c = new Node[keys.length + 1];
+				System.arraycopy(keys, 0, k, 0, i);
+				System.arraycopy(keys, i, k, i + 1, keys.length - i);
+				System.arraycopy(children, 0, c, 0, i);
+				System.arraycopy(children, i, c, i + 1, keys.length - i);
+				k[i] = key;
+				c[i] = child;
+			}
+			return new Node(value, count + countChange, k, c);
+		}
+	}
+	/***************************************************************************
+	 * Version: everything a reader needs, immutable
+	 *  __________________________ ________________
+	 * |  size, keySum, numNodes  |  root : Node   |
+	 * |__________________________|________________|
+	 *
+	 * Also the read-only PrefixMap that snapshot() returns
+	 *************************************************************************/
+	private static final class Version implements PrefixMap {
+
+		final Alphabet alphabet;
+		final Node root;
+		final int size, keySum, numNodes;
+
+		Version(Alphabet alphabet, Node root, int size, int keySum, int numNodes) {
+			this.alphabet = alphabet;
+			this.root = root;
+			this.size = size;
+			this.keySum = keySum;
+			this.numNodes = numNodes;
+		}
+
+		@Override
+		public boolean isEmpty() { return size == 0; }
+		@Override
+		public int size() { return size; }
+		@Override
+		public int countPrefixes() { return numNodes - 1; }
+		@Override
+		public int sumKeyLengths() { return keySum; }
+
+		@Override
+		public String get(String key) {
+			Node pos = traverse(root, key, alphabet);
+			return pos == null ? null : pos.value;
+		}
+
+		@Override
+		public String put(String key, String value) { throw new UnsupportedOperationException("snapshots are read only"); }
+		@Override
+		public String remove(String key) { throw new UnsupportedOperationException("snapshots are read only"); }
+
+		@Override
+		public int countKeysMatchingPrefix(String prefix) {
+			Node subtrie = traverse(root, prefix, alphabet);
+			return subtrie == null ? 0 : subtrie.count;
+		}
+		@Override
+		public List<String> getKeysMatchingPrefix(String prefix) {
+			List<String> keys = new ArrayList<>();
+			Node subtrie = traverse(root, prefix, alphabet);
+			if (subtrie != null)
+				preOrderKeys(subtrie, prefix, keys);
+			return keys;
+		}
+	}
+
+	private final Alphabet ALPHABET;
+	private volatile Version current;
+
+	public PersistentPrefixTree(String validChars) {
+		ALPHABET = new Alphabet(validChars);
+		current = new Version(ALPHABET, new Node(null, 0, NO_KEYS, NO_CHILDREN), 0, 0, 1);
+	}
+
+	public PersistentPrefixTree() { this("ACGT"); }
+
+	/*
+	 * The tree as it is right now, O(1) and never changes afterwards
+	 * (put and remove on it throw UnsupportedOperationException)
+	 */
+	public PrefixMap snapshot() { return current; }
+
+	@Override
+	public boolean isEmpty() { return current.isEmpty(); }
+	@Override
+	public int size() { return current.size(); }
+	@Override
+	public int countPrefixes() { return current.countPrefixes(); }
+	@Override
+	public int sumKeyLengths() { return current.sumKeyLengths(); }
+
+	@Override
+	public String get(String key) { return current.get(key); }
+	@Override
+	public synchronized String put(String key, String value) {
+
+		ALPHABET.verify(key);
+		if (value == null) throw new IllegalArgumentException();
+
+		Version v = current;
+		Node[] path = path(v.root, key);
+		Node old = path[key.length()];
+		String prev = old == null ? null : old.value;
+		int added = prev == null ? 1 : 0, created = 0;
+
+		// copy back up from the key
+		Node node = old == null ? new Node(value, 1, NO_KEYS, NO_CHILDREN) : old.withValue(value, added);
+		for (int d = key.length() - 1; d >= 0; d--) {
+			if (path[d + 1] == null)
+				created++;
+			Node parent = path[d] == null ? new Node(null, 0, NO_KEYS, NO_CHILDREN) : path[d];
+			node = parent.withChild(key.charAt(d), node, added);
+		}
+
+		current = new Version(ALPHABET, node, v.size + added, v.keySum + added * key.length(), v.numNodes + created);
+		return prev;
+	}
+	@Override
+	public synchronized String remove(String key) {
+
+		Version v = current;
+		Node pos = traverse(v.root, key, ALPHABET);
+		if (pos == null || pos.value == null)
+			return null;
+
+		Node[] path = path(v.root, key);
+		int pruned = 0;
+		Node node = pos.withValue(null, -1);
+		for (int d = key.length() - 1; d >= 0; d--) {
+			if (node.isDead()) {
+				node = null;
+				pruned++;
+			}
+			node = path[d].withChild(key.charAt(d), node, -1);
+		}
+
+		current = new Version(ALPHABET, node, v.size - 1, v.keySum - key.length(), v.numNodes - pruned);
+		return pos.value;
+	}
+	/*
+	 * Nodes along the key from the root, null from where the tree runs out
+	 */
+	private static Node[] path(Node root, String key) {
+		Node[] path = new Node[key.length() + 1];
+		path[0] = root;
+		for (int i = 0; i < key.length() && path[i] != null; i++)
+			path[i + 1] = path[i].getChild(key.charAt(i));
+		return path;
+	}
+
+	private static Node traverse(Node from, String path, Alphabet alphabet) {
+
+		if (path == null) throw new IllegalArgumentException("null key");
+		Node cur = from;
+
+		int i = 0;
+		for (Node next; i < path.length() && (next = cur.getChild(path.charAt(i))) != null; i++)
+			cur = next; // getChild doesn't check the character, the miss (and the rest) are verified below
+
+		alphabet.verify(path, i);
+		return i == path.length() ? cur : null;
+	}
+
+	@Override
+	public int countKeysMatchingPrefix(String prefix) { return current.countKeysMatchingPrefix(prefix); }
+	@Override
+	public List<String> getKeysMatchingPrefix(String prefix) { return current.getKeysMatchingPrefix(prefix); }
+	/**************************************************************************************
+	 * Populates the list with keys in the subtrie, with an explicit stack (children are
+	 * pushed backwards so they come off in order) and a single char buffer
+	 **************************************************************************************/
+	private static void preOrderKeys(Node subtrie, String prefix, List<String> keys) {
+
+		int base = prefix.length();
+		char[] buf = Arrays.copyOf(prefix.toCharArray(), base + 16);
+		Node[] stack = new Node[16];
+		int[] depths = new int[16];
+		char[] chars = new char[16];
+		int top = 0;
+
+		stack[top] = subtrie;
+		depths[top++] = base;
+		while (top > 0) {
+			Node cur = stack[--top];
+			int depth = depths[top];
+			if (depth > base) {
+				if (depth > buf.length)
+					buf = Arrays.copyOf(buf, depth * 2);
+				buf[depth - 1] = chars[top];
+			}
+			if (cur.value != null)
+				keys.add(new String(buf, 0, depth));
+
+			for (int i = cur.keys.length - 1; i >= 0; i--) {
+				if (top == stack.length) {
+					stack = Arrays.copyOf(stack, top * 2);
+					depths = Arrays.copyOf(depths, top * 2);
+					chars = Arrays.copyOf(chars, top * 2);
+				}
+				stack[top] = cur.children[i];
+				depths[top] = depth + 1;
+				chars[top++] = cur.keys[i];
+			}
+		}
+	}
+}
@@ -0,0 +1,112 @@
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class PersistentPrefixTreeTest extends BasicTest {
+	
+	@Override
+	protected PrefixMap create() { return new PersistentPrefixTree("ACTG"); }
+	
+	@Test
+	public void testSnapshotDoesNotChange() {
+		PersistentPrefixTree t = new PersistentPrefixTree("ACTG");
+		t.put("CAT", "meow");
+		t.put("GAT", "tag");
+		PrefixMap before = t.snapshot();
+		
+		t.put("CAT", "purr");
+		t.put("CATTAG", "long cat");
+		t.remove("GAT");
+		
+		assertEquals("meow", before.get("CAT"));
+		assertEquals("tag", before.get("GAT"));
+		assertNull(before.get("CATTAG"));
+		assertEquals(2, before.size());
+		assertEquals(6, before.countPrefixes());
+		assertEquals(Arrays.asList("CAT", "GAT"), before.getKeysMatchingPrefix(""));
+		
+		assertEquals("purr", t.get("CAT"));
+		assertNull(t.get("GAT"));
+		assertEquals(Arrays.asList("CAT", "CATTAG"), t.getKeysMatchingPrefix(""));
+		assertEquals(6, t.countPrefixes());
+	}
+	
+	@Test
+	public void testMalformedLookups() {
+		PersistentPrefixTree t = new PersistentPrefixTree("ACTG");
+		t.put("CAT", "meow");
+		for (PrefixMap m : new PrefixMap[] { t, t.snapshot() })
+			for (String key : new String[] { "\u00e9", "A\u00e9", "CAX", "CATX", "X" }) {
+				try {
+					m.get(key);
+					fail(key);
+				} catch (MalformedKeyException e) {}
+				try {
+					m.countKeysMatchingPrefix(key);
+					fail(key);
+				} catch (MalformedKeyException e) {}
+				try {
+					m.getKeysMatchingPrefix(key);
+					fail(key);
+				} catch (MalformedKeyException e) {}
+			}
+		for (String key : new String[] { "\u00e9", "A\u00e9", "CAX" })
+			try {
+				t.remove(key);
+				fail(key);
+			} catch (MalformedKeyException e) {}
+		assertEquals(1, t.size());
+	}
+	
+	@Test(expected = UnsupportedOperationException.class)
+	public void testSnapshotIsReadOnly() {
+		PersistentPrefixTree t = new PersistentPrefixTree("ACTG");
+		t.snapshot().put("CAT", "meow");
+	}
+	
+	@Test
+	public void testScanWhileWriting() throws InterruptedException {
+		PersistentPrefixTree t = new PersistentPrefixTree("ACTG");
+		AtomicBoolean done = new AtomicBoolean();
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		
+		Thread writer = new Thread(() -> {
+			Random RNG = new Random(3);
+			try {
+				while (!done.get()) {
+					char[] key = new char[1 + RNG.nextInt(8)];
+					for (int j = 0; j < key.length; j++)
+						key[j] = "ACGT".charAt(RNG.nextInt(4));
+					if (RNG.nextBoolean())
+						t.put(new String(key), "v");
+					else
+						t.remove(new String(key));
+				}
+			} catch (Throwable e) {
+				failure.set(e);
+			}
+		});
+		writer.setDaemon(true);
+		writer.start();
+		
+		// every scan of a snapshot has to agree with the snapshot's own counts
+		try {
+			for (int i = 0; i < 200; i++) {
+				PrefixMap snapshot = t.snapshot();
+				List<String> keys = snapshot.getKeysMatchingPrefix("");
+				assertEquals(snapshot.size(), keys.size());
+				assertEquals(snapshot.countKeysMatchingPrefix("A"), snapshot.getKeysMatchingPrefix("A").size());
+				assertEquals(keys, snapshot.getKeysMatchingPrefix(""));
+			}
+		} finally {
+			done.set(true); // a failed assertion mustn't leave the writer going
+			writer.join();
+		}
+		assertNull(failure.get());
+	}
+}
@@ -0,0 +1,186 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ProtocolException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/******************************************************************************
+ * Serves a PrefixMap over a socket on the loopback interface, so a shard
+ * of a ShardedPrefixMap can live in another JVM (see RemotePrefixMap)
+ *
+ *   java PrefixMapServer <port> [validChars]      (a PrefixTree, port 0 = any)
+ *
+ * Protocol, big endian, one request then one response at a time per
+ * connection:
+ *
+ *   request:   op (byte), key or prefix (string, null if the op has none),
+ *              value (string, PUT only)
+ *   response:  status (byte), then the result if OK:
+ *              int, string, or a list (int count + that many strings)
+ *
+ *   string:    int length in bytes (-1 for null), UTF-8 bytes, at most
+ *              MAX_STRING_BYTES (the length is checked before anything
+ *              gets allocated for it)
+ *
+ * Errors come back as a status (malformed key, illegal argument, anything
+ * else with its message) and are thrown again on the client side. A request
+ * with a string over the limit is answered with ILLEGAL_ARGUMENT and the
+ * connection is closed, the rest of it is still on the wire. Calls are
+ * serialised on the map, so any PrefixMap can be served to any number of
+ * connections
+ ******************************************************************************/
+public class PrefixMapServer implements Closeable {
+
+	static final byte SIZE = 1, COUNT_PREFIXES = 2, SUM_KEY_LENGTHS = 3, GET = 4, PUT = 5, REMOVE = 6,
+				COUNT_KEYS_MATCHING_PREFIX = 7, GET_KEYS_MATCHING_PREFIX = 8;
+	static final byte OK = 0, MALFORMED_KEY = 1, ILLEGAL_ARGUMENT = 2, UNSUPPORTED = 3, FAILED = 4;
+	static final int MAX_STRING_BYTES = 64 << 20;
+
+	private final PrefixMap map;
+	private final ServerSocket server;
+	private final Thread acceptor;
+
+	public PrefixMapServer(PrefixMap map, int port) throws IOException {
+		if (map == null) throw new IllegalArgumentException("null map");
+		this.map = map;
+		server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+		acceptor = new Thread(this::accept, "PrefixMapServer:" + port());
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		PrefixMapServer server = new PrefixMapServer(new PrefixTree(args.length > 1 ? args[1] : "ACGT"), Integer.parseInt(args[0]));
+		System.out.println("listening on " + server.port());
+		server.acceptor.join();
+	}
+
+	public int port() { return server.getLocalPort(); }
+
+	/*
+	 * Stops taking connections, the open ones last until their clients close them
+	 */
+	@Override
+	public void close() throws IOException { server.close(); }
+
+	private void accept() {
+		while (!server.isClosed()) {
+			try {
+				Socket socket = server.accept();
+				Thread connection = new Thread(() -> serve(socket), "PrefixMapServer connection");
+				connection.setDaemon(true);
+				connection.start();
+			} catch (IOException e) {
+				return; // closed
+			}
+		}
+	}
+
+	private void serve(Socket socket) {
+
+		try (Socket s = socket;
+				DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()))) {
+			s.setTcpNoDelay(true);
+			while (true) {
+				byte op;
+				try {
+					op = in.readByte();
+				} catch (EOFException e) {
+					return; // client hung up
+				}
+				String first, second;
+				try {
+					first = readString(in);
+					second = op == PUT ? readString(in) : null;
+				} catch (ProtocolException e) {
+					out.writeByte(ILLEGAL_ARGUMENT);
+					writeString(out, e.getMessage());
+					out.flush();
+					return; // can't tell where the next request starts
+				}
+				Object result;
+				try {
+					synchronized (map) {
+						result = call(op, first, second);
+					}
+				} catch (MalformedKeyException e) {
+					out.writeByte(MALFORMED_KEY);
+					out.flush();
+					continue;
+				} catch (IllegalArgumentException | UnsupportedOperationException e) {
+					out.writeByte(e instanceof IllegalArgumentException ? ILLEGAL_ARGUMENT : UNSUPPORTED);
+					writeString(out, e.getMessage());
+					out.flush();
+					continue;
+				} catch (RuntimeException e) {
+					out.writeByte(FAILED);
+					writeString(out, e.toString());
+					out.flush();
+					continue;
+				}
+
+				out.writeByte(OK);
+				if (result instanceof Integer) {
+					out.writeInt((Integer) result);
+				} else if (result instanceof List) {
+					List<?> keys = (List<?>) result;
+					out.writeInt(keys.size());
+					for (Object key : keys)
+						writeString(out, (String) key);
+				} else {
+					writeString(out, (String) result);
+				}
+				out.flush();
+			}
+		} catch (IOException e) {
+			// connection gone, nothing to answer
+		}
+	}
+
+	private Object call(byte op, String first, String second) {
+		switch (op) {
+		case SIZE: return map.size();
+		case COUNT_PREFIXES: return map.countPrefixes();
+		case SUM_KEY_LENGTHS: return map.sumKeyLengths();
+		case GET: return map.get(first);
+		case PUT: return map.put(first, second);
+		case REMOVE: return map.remove(first);
+		case COUNT_KEYS_MATCHING_PREFIX: return map.countKeysMatchingPrefix(first);
+		case GET_KEYS_MATCHING_PREFIX: return map.getKeysMatchingPrefix(first);
+		default: throw new UnsupportedOperationException("unknown op " + op);
+		}
+	}
+
+	/***************************************************************************
+	 * Strings on the wire (RemotePrefixMap uses these too)
+	 ***************************************************************************/
+	static void writeString(DataOutputStream out, String s) throws IOException {
+		if (s == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	static String readString(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0)
+			return null;
+		if (length > MAX_STRING_BYTES)
+			throw new ProtocolException("string of " + length + " bytes, the limit is " + MAX_STRING_BYTES);
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -1,8 +1,23 @@
 import java.util.List;
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
-public class PrefixTree implements PrefixMap {
+public class PrefixTree implements StreamingPrefixMap {
 	
 	protected class Node {
 		/**********************************************
@@ -11,44 +26,182 @@ public class PrefixTree implements PrefixMap {
 		 * Node:|        |        |                  |
 		 *      |                 |                  |
 		 *      |  parent: Node   |  value: String   |
+		 *      |                 |__________________|
 		 *      |                 |                  |
+		 *      |                 |   count : int    |
+		 *      |                 | (keys in subtrie)|
 		 *      |_________________|__________________|
+		 *      |                                    |
+		 *      |   numChildren : char  + one of:    |
+		 *      |                                    |
+		 *      | none (leaves)                      |
+		 *      | sparse : up to 1, 4 or 16 children |
+		 *      |   sorted by their own key          |
+		 *      | indexed : up to 48 children,       |
+		 *      |   map = slot + 1 for every index   |
+		 *      | direct : a slot for every index    |
+		 *      |____________________________________|
 		 *      |        |        |        |         |
 		 *  <--------   children : Node array    -------->
 		 *      |________|___|____|___|____|_________|
 		 *                   |        |
 		 *                   V        V
+		 * 
+		 * The layout grows and shrinks with the number of
+		 * children (adaptive radix tree style), most nodes
+		 * are leaves or chains so most arrays are tiny
 		 **********************************************/
 		String value = null;
+		int count = 0; // values in this node and everything below it
 		final Node parent; // for efficient removal
 		final char key; // for removal as well
-		final Node[] children = new Node[VALID_CHARS.length]; // you never know
+		Node[] children = null; // null until there is a child
+		char[] map = null; // indexed layout only, slot + 1 for each index (0 if none)
+		char numChildren = 0; // the constructor keeps alphabets small enough for a char
 		
 		Node(Node parent, char key) { this.parent = parent; this.key = key;}
 		
 		String getValue() { return value; }
-		Node getChild(char key) { return children[index(key)]; }
+		Node getChild(char key) { return child(ALPHABET.index(key)); }
 		
 		public Node getOrCreateChild(char key) {
 			
-			int index = index(key);
-			if (children[index] == null) {
-				children[index] =  new Node(this, key);
+			int index = ALPHABET.index(key);
+			Node child = child(index);
+			if (child == null) {
+				addChild(index, child = new Node(this, key));
 				PrefixTree.this.updateNodeCount(1); // because encapsulation
 			}
-			return children[index];
+			return child;
+		}
+		/*********************************************************
+		 * Child storage (the only code that knows the layouts)
+		 *********************************************************/
+		Node child(int index) {
+			int slot = slot(index);
+			return slot < 0 ? null : children[slot];
+		}
+		
+		private boolean sparse() { return map == null && children.length < ALPHABET.size(); }
+		private boolean indexed() { return map != null; }
+		
+		PrefixTreeStats.Layout layout() {
+			return children == null ? PrefixTreeStats.Layout.LEAF : sparse() ? PrefixTreeStats.Layout.SPARSE
+					: indexed() ? PrefixTreeStats.Layout.INDEXED : PrefixTreeStats.Layout.DIRECT;
 		}
 		
-		int index(char key) {
+		private int slot(int index) {
+			if (children == null)
+				return -1;
+			if (sparse()) {
+				char key = ALPHABET.charAt(index);
+				for (int i = 0; i < numChildren; i++)
+					if (children[i].key == key)
+						return i;
+				return -1;
+			}
+			if (indexed())
+				return map[index] - 1;
+			return children[index] == null ? -1 : index;
+		}
+		
+		void addChild(int index, Node child) {
 			
-			int i = Arrays.binarySearch(VALID_CHARS, key);
-			if (i < 0) throw new MalformedKeyException();
-			return i;
+			if (children == null || numChildren == children.length)
+				relayout(numChildren + 1);
+			
+			if (sparse()) { // keep them sorted
+				int i = numChildren;
+				for (; i > 0 && children[i - 1].key > child.key; i--)
+					children[i] = children[i - 1];
+				children[i] = child;
+			} else if (indexed()) {
+				int free = 0;
+				while (children[free] != null)
+					free++;
+				map[index] = (char) (free + 1);
+				children[free] = child;
+			} else {
+				children[index] = child;
+			}
+			numChildren++;
+		}
+		
+		void removeChild(int index) {
+			
+			int slot = slot(index);
+			if (sparse()) {
+				System.arraycopy(children, slot + 1, children, slot, numChildren - slot - 1);
+				children[numChildren - 1] = null;
+			} else {
+				if (indexed())
+					map[index] = 0;
+				children[slot] = null;
+			}
+			numChildren--;
+			
+			if (numChildren == 0)
+				relayout(0);
+			else if (capacity(numChildren + 1) < children.length) // keep a free slot so it doesn't flip flop
+				relayout(numChildren + 1);
+		}
+		/*
+		 * Moves the children into the smallest layout that fits the given number
+		 */
+		private void relayout(int fit) {
+			
+			int capacity = fit == 0 ? 0 : capacity(fit);
+			if (children != null && capacity == children.length)
+				return;
+			
+			Node[] old = children;
+			int n = numChildren;
+			
+			children = capacity == 0 ? null : new Node[capacity];
+			map = capacity > SPARSE_MAX && capacity < ALPHABET.size() ? new char[ALPHABET.size()] : null;
+			numChildren = 0;
+			
+			if (old == null)
+				return;
+			for (int i = 0, found = 0; found < n; i++) {
+				if (old[i] == null)
+					continue;
+				addChild(ALPHABET.index(old[i].key), old[i]);
+				found++;
+			}
+		}
+		/*
+		 * First child with an index >= from (or null)
+		 */
+		Node nextChild(int from) {
+			if (children == null)
+				return null;
+			if (sparse()) {
+				for (int i = 0; i < numChildren; i++)
+					if (ALPHABET.index(children[i].key) >= from)
+						return children[i];
+				return null;
+			}
+			if (indexed()) {
+				for (int i = from; i < map.length; i++)
+					if (map[i] != 0)
+						return children[map[i] - 1];
+				return null;
+			}
+			for (int i = from; i < children.length; i++)
+				if (children[i] != null)
+					return children[i];
+			return null;
 		}
 		
+		Node nextSibling() { return parent.nextChild(ALPHABET.index(key) + 1); }
+		
 		String setValue(String v) {
 			String prev = value;
 			value = v;
+			if (prev == null)
+				for (Node n = this; n != null; n = n.parent)
+					n.count++;
 			return prev;
 		}
 		/*****************************************************************
@@ -57,13 +210,16 @@ public class PrefixTree implements PrefixMap {
 		String removeValue() {
 			String prev = value;
 			value = null;
+			count--;
 			if (parent != null)
 				parent.removeIfDead(this);
 			
 			return prev;
 		}
 		/*********************************************************
-		 * Recursively deletes empty/dead nodes from the parent
+		 * Deletes empty/dead nodes from the parent and takes the
+		 * removed key off the counts on the way up (a loop, so
+		 * long keys don't blow the stack)
 		 *
 		 * DO NOT CALL FROM OUTSIDE
 		 *(I'm sorry Java doesn't have nested functions
@@ -74,32 +230,25 @@ public class PrefixTree implements PrefixMap {
 		 *********************************************************/
 		void removeIfDead(Node child) {
 			
-			if (!child.isDead()) return;
-			
-			children[index(child)] = null;
-			PrefixTree.this.updateNodeCount(-1);
-			
-			if (parent != null)
-				parent.removeIfDead(this);
+			for (Node node = this; node != null; child = node, node = node.parent) {
+				node.count--;
+				if (child.isDead()) {
+					node.removeChild(node.index(child));
+					PrefixTree.this.updateNodeCount(-1);
+				}
+			}
 		}
 		/**********************************************************
 		 * return whether or the node is useless
 		 *********************************************************/
-		boolean isDead() {
-			
-			for (int i = 0; i < children.length; i++)
-				if (children[i] != null)
-					return false;
-			
-			return value == null;
-		}
+		boolean isDead() { return numChildren == 0 && value == null; }
 		/********************************************************
 		 * Also don't call this from outside
 		 ********************************************************/
 		int index(Node child) {
 			if (child == null) throw new IllegalArgumentException("undefined behaviour");
-			int i = index(child.key);
-			if (this.children[i] != child) throw new IllegalArgumentException("Invalid child");
+			int i = ALPHABET.index(child.key);
+			if (child(i) != child) throw new IllegalArgumentException("Invalid child");
 			return i;
 		}
 	}
@@ -110,6 +259,7 @@ public class PrefixTree implements PrefixMap {
 	 * |     :      |
 	 * | A, C, G, T |
 	 * |____________|
+	 * (or whatever alphabet was given, char -> index lookup table)
 	 * 
 	 * Instance:
 	 *  __________________________ ________________
@@ -125,42 +275,45 @@ public class PrefixTree implements PrefixMap {
 	 * |__________________________|________________|
 	 * 
 	 *************************************************************************/
-	private final char[] VALID_CHARS;
-	private final String VALID_REGEX;
-	private final Node root = new Node(null, '\0');
+	private static final int SPARSE_MAX = 16, INDEXED_MAX = 48;
+	/*
+	 * Node array size needed for the given number of children: 1, 4, 16, 48 or
+	 * one slot per character (whichever comes first)
+	 */
+	private int capacity(int children) {
+		int capacity = children <= 1 ? 1 : children <= 4 ? 4 : children <= SPARSE_MAX ? SPARSE_MAX
+				: children <= INDEXED_MAX ? INDEXED_MAX : Integer.MAX_VALUE;
+		return Math.min(capacity, ALPHABET.size());
+	}
+	
+	private final Alphabet ALPHABET;
+	private final Node root;
 	private int size = 0, // obviously there are no more than 2^31 - 1 DNA sequences in existence
 				keySum = 0, // and the length sum of those sequences are also below 2^31 - 1
 				numNodes = 1; // the number of unique prefixes is also below 2^31 - 1
+	private BranchListener listener = null;
+	
+	/*
+	 * Hears about every branch put, remove or the compute family grows or cuts
+	 * off: the depth of the node it hangs off and how many nodes it has
+	 * (negative when cut off). Called on the writer's thread, after the change.
+	 * The bulk operations (build, putAll, removeAll) don't report
+	 */
+	public interface BranchListener { void branch(int depth, int nodes); }
+	
+	/*
+	 * One listener per tree, null takes it off
+	 */
+	public void setBranchListener(BranchListener listener) { this.listener = listener; }
 	
 	public PrefixTree(String validChars) {
-		for (int i = 0; i < validChars.length(); i++) {
-			char ch = validChars.charAt(i);
-			switch (ch) {
-				case '\\':
-				case ']':
-				case '[':
-				case '^':
-					throw new IllegalArgumentException("no " + ch + " pls");
-			}
-			if (i != validChars.lastIndexOf(ch))
-				throw new IllegalArgumentException("repeated characters");
-		}
-		
-		VALID_CHARS = validChars.toCharArray();
-		Arrays.sort(VALID_CHARS);
-		VALID_REGEX = '[' + new String(VALID_CHARS) + "]*+";
+		ALPHABET = new Alphabet(validChars);
+		if (ALPHABET.size() > Character.MAX_VALUE) throw new IllegalArgumentException("too many characters");
+		root = new Node(null, '\0');
 	}
 	
 	public PrefixTree() { this("ACGT"); }//:P bad code right here
 
-	/***********************************************************
-	 * Helper methods have static so it's easy to identify 
-	 * that they don't change instance variables
-	 ***********************************************************/
-	private void verify(String key, String regex) {
-		if (key == null) throw new IllegalArgumentException("null key");
-		if (!key.matches(regex)) throw new MalformedKeyException(); // possessive, since it fails faster
-	}
 	@Override
 	public boolean isEmpty() { return size == 0; }
 	@Override
@@ -171,10 +324,25 @@ public class PrefixTree implements PrefixMap {
 	public int sumKeyLengths() { return keySum; }
 
 	private void updateNodeCount(int amount) { numNodes += amount; }
+	
+	/*
+	 * Tells the listener about the branch a change to a key grew or cut off, if any
+	 */
+	private void reportBranch(int nodesBefore, int keyLength) {
+		int nodes = numNodes - nodesBefore;
+		if (listener != null && nodes != 0)
+			listener.branch(keyLength - Math.abs(nodes), nodes);
+	}
+	
+	/*
+	 * For the classes that work on the whole tree at once (e.g. snapshots)
+	 */
+	Alphabet alphabet() { return ALPHABET; }
+	Node root() { return root; }
 	@Override
 	public String get(String key) {
 		
-		Node pos = traverse(root, key, VALID_REGEX);
+		Node pos = traverse(root, key, ALPHABET);
 		if (pos == null)
 			return null;
 		else
@@ -183,79 +351,953 @@ public class PrefixTree implements PrefixMap {
 	@Override
 	public String put(String key, String value) {
 		
-		verify(key, VALID_REGEX);
+		if (key == null) throw new IllegalArgumentException("null key");
 		if (value == null) throw new IllegalArgumentException();
 		
 		Node pos = root;
-		for (int i = 0; i < key.length(); i++)
+		int i = 0, before = numNodes;
+		for (Node next; i < key.length() && (next = pos.getChild(key.charAt(i))) != null; i++)
+			pos = next; // existing path is validated as it is walked
+		
+		ALPHABET.verify(key, i); // the rest before creating anything
+		for (; i < key.length(); i++)
 			 pos = pos.getOrCreateChild(key.charAt(i));
 		
 		if (pos.getValue() == null) {
 			keySum += key.length(); // no overflow plz
 			size++;
 		}
-		return pos.setValue(value);
+		String prev = pos.setValue(value);
+		reportBranch(before, key.length());
+		return prev;
 	}
 	@Override
 	public String remove(String key) {
 		
-		Node pos = traverse(root, key, VALID_REGEX);
+		Node pos = traverse(root, key, ALPHABET);
 		if (pos == null || pos.getValue() == null)
 			return null;
 		
 		keySum -= key.length();
 		size--;
-		return pos.removeValue();
+		int before = numNodes;
+		String prev = pos.removeValue();
+		reportBranch(before, key.length());
+		return prev;
 	}
 	
-	private Node static traverse(Node from, String path, String validCharsRegex) {
+	/**************************************************************************************
+	 * Read-modify-write in one walk down the key (same as java.util.Map, except that
+	 * nulls are IllegalArgumentException like everywhere else here)
+	 *  - putIfAbsent: returns the value that was there, null if the key was new
+	 *  - computeIfAbsent: returns the value now there (nothing is added for null)
+	 *  - compute: the function gets the old value (or null), null takes the key out
+	 *  - merge: the value for a new key, otherwise the function of the old one and
+	 *    the value, null takes the key out
+	 * A key that isn't there and doesn't get a value creates no nodes
+	 **************************************************************************************/
+	public String putIfAbsent(String key, String value) {
+		if (value == null) throw new IllegalArgumentException();
+		return update(key, (k, old) -> old != null ? old : value, true);
+	}
+	
+	public String computeIfAbsent(String key, Function<? super String, ? extends String> mapping) {
+		if (mapping == null) throw new IllegalArgumentException("null function");
+		return update(key, (k, old) -> old != null ? old : mapping.apply(k), false);
+	}
+	
+	public String compute(String key, BiFunction<? super String, ? super String, ? extends String> remapping) {
+		if (remapping == null) throw new IllegalArgumentException("null function");
+		return update(key, remapping, false);
+	}
+	
+	public String merge(String key, String value, BiFunction<? super String, ? super String, ? extends String> remapping) {
+		if (value == null) throw new IllegalArgumentException();
+		if (remapping == null) throw new IllegalArgumentException("null function");
+		return update(key, (k, old) -> old == null ? value : remapping.apply(old, value), false);
+	}
+	/*
+	 * Walks as far as the tree goes, gives the function the old value, then creates
+	 * the rest of the path, sets the value or takes it out (pruning) depending on the
+	 * answer. Returns the old value or the new one
+	 */
+	String update(String key, BiFunction<? super String, ? super String, ? extends String> f, boolean returnOld) {
+		
+		if (key == null) throw new IllegalArgumentException("null key");
+		
+		Node pos = root;
+		int i = 0, before = numNodes;
+		for (Node next; i < key.length() && (next = pos.getChild(key.charAt(i))) != null; i++)
+			pos = next;
+		ALPHABET.verify(key, i);
 		
-		verify(path, validCharsRegex);
+		String old = i == key.length() ? pos.getValue() : null,
+				value = f.apply(key, old);
+		if (value == null) {
+			if (old != null) {
+				keySum -= key.length();
+				size--;
+				pos.removeValue();
+				reportBranch(before, key.length());
+			}
+			return returnOld ? old : null;
+		}
+		
+		for (; i < key.length(); i++)
+			pos = pos.getOrCreateChild(key.charAt(i));
+		if (old == null) {
+			keySum += key.length();
+			size++;
+		}
+		pos.setValue(value);
+		reportBranch(before, key.length());
+		return returnOld ? old : value;
+	}
+	
+	/***********************************************************
+	 * Helper methods have static so it's easy to identify 
+	 * that they don't change instance variables
+	 ***********************************************************/
+	private static Node traverse(Node from, String path, Alphabet alphabet) {
+		
+		if (path == null) throw new IllegalArgumentException("null key");
 		Node cur = from;
 		
-		for (int i = 0; i < path.length() && cur != null; i++)
+		int i = 0;
+		for (; i < path.length() && cur != null; i++)
 			cur = cur.getChild(path.charAt(i));
 		
+		alphabet.verify(path, i); // fell off the tree, still have to validate the rest
 		return cur;
 	}
 	
 	@Override
-	public int countKeysMatchingPrefix(String prefix) 
-	{ return countValues(traverse(root, prefix, VALID_REGEX), VALID_CHARS); }
-	
-	private static int countValues(Node subtrie, char[] validChars) {
+	public int countKeysMatchingPrefix(String prefix) {
 		
-		if (subtrie == null)
-			return 0;
-		
-		int count = (subtrie.getValue() != null) ? 1 : 0;
-		for (char base : validChars)
-			count += countValues(subtrie.getChild(base), validChars);
-		
-		return count;
+		Node subtrie = traverse(root, prefix, ALPHABET);
+		return subtrie == null ? 0 : subtrie.count;
 	}
 	@Override
 	public List<String> getKeysMatchingPrefix(String prefix) {
 		
 		List<String> keys = new ArrayList<>();
-		preOrderKeys(traverse(root, prefix, VALID_REGEX), 
-			     new StringBuilder(prefix), keys, VALID_CHARS);		
+		Node subtrie = traverse(root, prefix, ALPHABET);
+		if (subtrie != null)
+			preOrderKeys(subtrie, prefix, keys);
 		return keys;
 	}
 	/**************************************************************************************
 	 * Populates the list with keys in the subtrie given in the parameter
 	 **************************************************************************************/
-	private static void preOrderKeys(Node subtrie, StringBuilder curKey, List<String> keys, char[] validChars) {
+	private static void preOrderKeys(Node subtrie, String prefix, List<String> keys) {
+		
+		Walker walker = new Walker(subtrie, prefix);
+		while (walker.next() != null)
+			keys.add(walker.key());
+	}
+	/**************************************************************************************
+	 * Pre-order walk over the nodes with values in a subtrie, one at a time
+	 * 
+	 * No recursion and no stack: the parent pointers lead back up, and the key so far
+	 * lives in a single char buffer (only the emitted keys allocate)
+	 **************************************************************************************/
+	private static class Walker {
+		
+		final Node subtrie;
+		Node cur = null;
+		char[] buf;
+		int depth;
+		
+		Walker(Node subtrie, String key) {
+			this.subtrie = subtrie;
+			depth = key.length();
+			buf = Arrays.copyOf(key.toCharArray(), depth + 16);
+		}
+		/*
+		 * The next node with a value, null once the subtrie is done
+		 */
+		Node next() {
+			
+			if (cur == null) {
+				cur = subtrie;
+				if (cur.getValue() != null)
+					return cur;
+			}
+			while (true) {
+				Node next = cur.nextChild(0); // down if possible
+				while (next == null && cur != subtrie) { // otherwise up until there is a sibling
+					next = cur.nextSibling();
+					depth--;
+					if (next == null)
+						cur = cur.parent;
+				}
+				if (next == null)
+					return null; // cur stays at the subtrie, so it stays done
+				
+				cur = next;
+				if (depth == buf.length)
+					buf = Arrays.copyOf(buf, depth * 2);
+				buf[depth++] = cur.key;
+				if (cur.getValue() != null)
+					return cur;
+			}
+		}
+		/*
+		 * Key of the node last returned by next()
+		 */
+		String key() { return new String(buf, 0, depth); }
+	}
+	
+	/**************************************************************************************
+	 * Batches
+	 * 
+	 * The keys are sorted first, so neighbours share as much of their path as they can,
+	 * and each key carries on from the deepest node it shares with the one before instead
+	 * of starting again at the root. Every key is checked before anything is looked up or
+	 * changed, so a bad key leaves the tree as it was
+	 **************************************************************************************/
+	/*
+	 * Values for the keys (null where there isn't one), in the order the keys came in
+	 */
+	public List<String> getAll(Collection<String> keys) {
+		
+		String[] batch = verifyAll(keys);
+		String[] values = new String[batch.length];
+		Cursor cursor = new Cursor(false);
+		for (int i : sortedOrder(batch, ALPHABET)) {
+			Node node = cursor.seek(batch[i]);
+			values[i] = node == null ? null : node.getValue();
+		}
+		return Arrays.asList(values);
+	}
+	
+	public void putAll(Map<String, String> entries) {
+		
+		String[] batch = verifyAll(entries.keySet());
+		for (String value : entries.values())
+			if (value == null) throw new IllegalArgumentException();
+		
+		Loader loader = new Loader(this, root, 0, false);
+		for (int i : sortedOrder(batch, ALPHABET))
+			loader.add(batch[i], entries.get(batch[i]));
+		loader.finish();
+		
+		size += loader.size;
+		keySum += loader.keySum;
+		numNodes += loader.nodes;
+	}
+	/*
+	 * Previous values (null where there wasn't one), in the order the keys came in.
+	 * The counts and the pruning are done level by level as the walk leaves each node,
+	 * not up to the root for every key
+	 */
+	public List<String> removeAll(Collection<String> keys) {
+		
+		String[] batch = verifyAll(keys);
+		String[] values = new String[batch.length];
+		Cursor cursor = new Cursor(true);
+		for (int i : sortedOrder(batch, ALPHABET)) {
+			Node node = cursor.seek(batch[i]);
+			if (node == null || node.getValue() == null)
+				continue;
+			values[i] = node.value;
+			node.value = null;
+			cursor.removed[batch[i].length()]++;
+			keySum -= batch[i].length();
+			size--;
+		}
+		cursor.seek(""); // back to the root, which finishes the counts
+		root.count -= cursor.removed[0];
+		return Arrays.asList(values);
+	}
+	
+	private String[] verifyAll(Collection<String> keys) {
+		String[] batch = keys.toArray(new String[0]);
+		for (String key : batch)
+			ALPHABET.verify(key);
+		return batch;
+	}
+	/**************************************************************************************
+	 * Positions of the (valid) keys in sorted order, equal keys stay in input order
+	 * 
+	 * MSD radix sort, a bucket per character plus one in front for keys that end there.
+	 * Sorting was most of the cost of a batch with comparisons, and the keys are usually
+	 * long with long shared prefixes, which is the worst case for comparing strings.
+	 * Ranges are kept on a stack rather than recursing one level per character
+	 **************************************************************************************/
+	private static final int INSERTION_SORT_MAX = 32;
+	
+	private static int[] sortedOrder(String[] keys, Alphabet alphabet) {
+		
+		int[] order = new int[keys.length], buf = new int[keys.length];
+		for (int i = 0; i < order.length; i++)
+			order[i] = i;
+		int[] counts = new int[alphabet.size() + 2];
+		
+		int[] ranges = new int[3 * 16]; // from, to, depth
+		int top = 0;
+		ranges[top++] = 0;
+		ranges[top++] = keys.length;
+		ranges[top++] = 0;
+		while (top > 0) {
+			int depth = ranges[--top], to = ranges[--top], from = ranges[--top];
+			
+			if (to - from <= INSERTION_SORT_MAX) {
+				insertionSort(keys, order, from, to);
+				continue;
+			}
+			if (to - from <= alphabet.size()) { // not worth clearing all the buckets
+				Integer[] slice = new Integer[to - from];
+				for (int i = from; i < to; i++)
+					slice[i - from] = order[i];
+				Arrays.sort(slice, (a, b) -> keys[a].compareTo(keys[b]));
+				for (int i = from; i < to; i++)
+					order[i] = slice[i - from];
+				continue;
+			}
+			
+			Arrays.fill(counts, 0);
+			for (int i = from; i < to; i++)
+				counts[bucket(keys[order[i]], depth, alphabet) + 1]++;
+			for (int b = 1; b < counts.length; b++)
+				counts[b] += counts[b - 1];
+			for (int i = from; i < to; i++) // stable
+				buf[from + counts[bucket(keys[order[i]], depth, alphabet)]++] = order[i];
+			System.arraycopy(buf, from, order, from, to - from);
+			
+			// counts[b] is now where bucket b ends, bucket 0 (ended here) is done
+			for (int b = 1, start = counts[0]; b < counts.length - 1; start = counts[b++]) {
+				if (counts[b] - start < 2)
+					continue;
+				if (top + 3 > ranges.length)
+					ranges = Arrays.copyOf(ranges, ranges.length * 2);
+				ranges[top++] = from + start;
+				ranges[top++] = from + counts[b];
+				ranges[top++] = depth + 1;
+			}
+		}
+		return order;
+	}
+	
+	private static int bucket(String key, int depth, Alphabet alphabet) {
+		return depth < key.length() ? alphabet.index(key.charAt(depth)) + 1 : 0;
+	}
+	
+	private static void insertionSort(String[] keys, int[] order, int from, int to) {
+		for (int i = from + 1; i < to; i++) {
+			int cur = order[i], j = i;
+			for (; j > from && keys[order[j - 1]].compareTo(keys[cur]) > 0; j--)
+				order[j] = order[j - 1];
+			order[j] = cur;
+		}
+	}
+	/**************************************************************************************
+	 * The path to the last key looked up (as far as it exists), for the batches
+	 * 
+	 * When removing, removed[d] is how many values went below the node at depth d since it
+	 * was reached. They come off its count when the walk leaves it, and that's also when
+	 * it can be pruned, since nothing in its subtrie is going to change any more
+	 **************************************************************************************/
+	private class Cursor {
+		
+		private Node[] path = new Node[16];
+		private int reached = 0; // depth of the deepest node on the path
+		private String last = "";
+		int[] removed;
+		
+		Cursor(boolean removing) {
+			path[0] = root;
+			removed = removing ? new int[16] : null;
+		}
+		/*
+		 * Node for the key, or null if it isn't in the tree
+		 */
+		Node seek(String key) {
+			
+			int common = 0, limit = Math.min(reached, Math.min(key.length(), last.length()));
+			while (common < limit && key.charAt(common) == last.charAt(common))
+				common++;
+			if (removed != null)
+				while (reached > common)
+					leave();
+			reached = common;
+			
+			if (key.length() >= path.length) {
+				path = Arrays.copyOf(path, key.length() * 2);
+				if (removed != null)
+					removed = Arrays.copyOf(removed, key.length() * 2);
+			}
+			for (Node next; reached < key.length() && (next = path[reached].getChild(key.charAt(reached))) != null;) {
+				path[++reached] = next;
+				if (removed != null)
+					removed[reached] = 0;
+			}
+			last = key;
+			return reached == key.length() ? path[reached] : null;
+		}
+		
+		private void leave() {
+			Node node = path[reached];
+			node.count -= removed[reached];
+			removed[reached - 1] += removed[reached];
+			if (node.isDead()) {
+				node.parent.removeChild(node.parent.index(node));
+				updateNodeCount(-1);
+			}
+			reached--;
+		}
+	}
+	
+	/**************************************************************************************
+	 * Approximate matching
+	 * 
+	 * Keys within k of the query, in the same (sorted) order as getKeysMatchingPrefix:
+	 *  - HAMMING: same length, at most k positions differ
+	 *  - LEVENSHTEIN: at most k single character insertions, deletions or substitutions
+	 * 
+	 * One pre-order walk (parent pointers again, no stack) that carries the distance
+	 * down: a mismatch count per depth for Hamming, a row of the edit distance table per
+	 * depth for Levenshtein. A subtrie is skipped as soon as nothing in it can come in
+	 * under k, so only the nodes near the query are visited, instead of every variant of
+	 * the query being looked up one by one
+	 * 
+	 * if the query contains any non-valid character, throw MalformedKeyException
+	 * if the query is null or k is negative, throw IllegalArgumentException
+	 **************************************************************************************/
+	public enum Metric { HAMMING, LEVENSHTEIN }
+	
+	public List<String> getKeysWithinDistance(String query, int k, Metric metric) {
+		
+		ALPHABET.verify(query);
+		if (k < 0) throw new IllegalArgumentException("negative distance");
+		if (metric == null) throw new IllegalArgumentException("null metric");
+		
+		List<String> keys = new ArrayList<>();
+		boolean hamming = metric == Metric.HAMMING;
+		int q = query.length();
+		// no key is further than its length plus q, so a huge k just means everything
+		// (Hamming never looks past q), and the deepest useful level is an int again
+		int maxDepth = hamming ? q : (int) Math.min((long) q + k, Integer.MAX_VALUE);
+		int size = Math.min(maxDepth, 16); // grown as the walk goes deeper, never past the tree
+		char[] buf = new char[size];
+		
+		// distances for the path so far, by depth
+		int[] mismatches = hamming ? new int[size + 1] : null;
+		int[][] rows = hamming ? null : new int[size + 1][];
+		if (!hamming) {
+			rows[0] = new int[q + 1];
+			for (int j = 0; j <= q; j++)
+				rows[0][j] = j;
+		}
+		
+		Node cur = root;
+		int depth = 0;
+		if (root.getValue() != null && (hamming ? q == 0 : q <= k))
+			keys.add("");
+		boolean descend = maxDepth > 0;
+		
+		while (true) {
+			Node next = descend ? cur.nextChild(0) : null; // down unless pruned
+			while (next == null && cur != root) { // otherwise up until there is a sibling
+				next = cur.nextSibling();
+				depth--;
+				if (next == null)
+					cur = cur.parent;
+			}
+			if (next == null)
+				return keys;
+			
+			cur = next;
+			if (depth == buf.length) {
+				size = (int) Math.min(2L * depth, maxDepth);
+				buf = Arrays.copyOf(buf, size);
+				if (hamming)
+					mismatches = Arrays.copyOf(mismatches, size + 1);
+				else
+					rows = Arrays.copyOf(rows, size + 1);
+			}
+			buf[depth++] = cur.key;
+			
+			int distance, best; // to the whole query, and the least any longer key could get
+			boolean whole = !hamming || depth == q; // Hamming only counts keys as long as the query
+			if (hamming) {
+				mismatches[depth] = mismatches[depth - 1] + (cur.key == query.charAt(depth - 1) ? 0 : 1);
+				distance = best = mismatches[depth];
+			} else {
+				if (rows[depth] == null)
+					rows[depth] = new int[q + 1];
+				int[] prev = rows[depth - 1], row = rows[depth];
+				row[0] = best = depth;
+				for (int j = 1; j <= q; j++) {
+					int sub = prev[j - 1] + (cur.key == query.charAt(j - 1) ? 0 : 1);
+					row[j] = Math.min(sub, Math.min(prev[j], row[j - 1]) + 1);
+					best = Math.min(best, row[j]);
+				}
+				distance = row[q];
+			}
+			
+			if (cur.getValue() != null && whole && distance <= k)
+				keys.add(new String(buf, 0, depth));
+			descend = best <= k && depth < maxDepth;
+		}
+	}
+	
+	/**************************************************************************************
+	 * Same as getKeysMatchingPrefix, and in the same order, but the subtries are walked
+	 * in parallel on the common pool
+	 **************************************************************************************/
+	public List<String> getKeysMatchingPrefixParallel(String prefix) {
+		return getKeysMatchingPrefixParallel(prefix, ForkJoinPool.commonPool());
+	}
+	
+	public List<String> getKeysMatchingPrefixParallel(String prefix, ForkJoinPool pool) {
 		
+		Node subtrie = traverse(root, prefix, ALPHABET);
 		if (subtrie == null)
-			return;
-		if (subtrie.getValue() != null)
-			keys.add(curKey.toString());
-		
-		for (char base : validChars) {
-			curKey.append(base);
-			preOrderKeys(subtrie.getChild(base), curKey, keys, validChars);
-			curKey.deleteCharAt(curKey.length() - 1);
+			return new ArrayList<>();
+		
+		String[] keys = new String[subtrie.count];
+		pool.invoke(new KeysTask(subtrie, prefix, keys, 0));
+		return new ArrayList<>(Arrays.asList(keys));
+	}
+	/**************************************************************************************
+	 * Splits by child down to PARALLEL_THRESHOLD keys per task
+	 * 
+	 * The subtree counts say exactly where each child's keys go in the pre-order, so
+	 * every task writes straight into its own slice of the output and there is nothing
+	 * to merge (and the order is always the sequential one)
+	 * 
+	 *  keys:  [ own | child A's keys | child C's keys | ... ]
+	 *         ^offset
+	 **************************************************************************************/
+	private static final int PARALLEL_THRESHOLD = 4096;
+	
+	private static class KeysTask extends RecursiveAction {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private final Node subtrie;
+		private final String key;
+		private final String[] keys;
+		private final int offset;
+		
+		KeysTask(Node subtrie, String key, String[] keys, int offset) {
+			this.subtrie = subtrie;
+			this.key = key;
+			this.keys = keys;
+			this.offset = offset;
+		}
+		
+		@Override
+		protected void compute() {
+			
+			if (subtrie.count <= PARALLEL_THRESHOLD) {
+				Walker walker = new Walker(subtrie, key);
+				for (int i = offset; walker.next() != null; i++)
+					keys[i] = walker.key();
+				return;
+			}
+			
+			// skip down chains with nothing on them in one go, no task per character
+			Node node = subtrie;
+			StringBuilder path = new StringBuilder(key);
+			while (node.getValue() == null && node.nextChild(0) != null && node.nextChild(0).nextSibling() == null) {
+				node = node.nextChild(0);
+				path.append(node.key);
+			}
+			
+			int at = offset;
+			String nodeKey = path.toString();
+			if (node.getValue() != null)
+				keys[at++] = nodeKey;
+			
+			List<KeysTask> tasks = new ArrayList<>();
+			for (Node child = node.nextChild(0); child != null; child = child.nextSibling()) {
+				tasks.add(new KeysTask(child, nodeKey + child.key, keys, at));
+				at += child.count;
+			}
+			invokeAll(tasks);
+		}
+	}
+	
+	/**************************************************************************************
+	 * Shape and estimated heap of the tree (see PrefixTreeStats), in one pass over every
+	 * node, split up on the common pool the same way as getKeysMatchingPrefixParallel.
+	 * Nothing is kept up to date in between, so it costs nothing until it is called
+	 * 
+	 * Value counts are sketched unless exactValues, which holds on to every value until
+	 * the end (see PrefixTreeStats)
+	 **************************************************************************************/
+	public PrefixTreeStats stats() { return stats(ForkJoinPool.commonPool(), false); }
+	
+	public PrefixTreeStats stats(ForkJoinPool pool) { return stats(pool, false); }
+	
+	public PrefixTreeStats stats(ForkJoinPool pool, boolean exactValues) {
+		return pool.invoke(new StatsTask(root, 0, 0, ALPHABET.size(), exactValues));
+	}
+	
+	private static class StatsTask extends RecursiveTask<PrefixTreeStats> {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private final Node subtrie;
+		private final int depth, label; // label: chars of the radix tree edge ending here
+		private final int alphabetSize;
+		private final boolean exactValues;
+		
+		StatsTask(Node subtrie, int depth, int label, int alphabetSize, boolean exactValues) {
+			this.subtrie = subtrie;
+			this.depth = depth;
+			this.label = label;
+			this.alphabetSize = alphabetSize;
+			this.exactValues = exactValues;
+		}
+		
+		private static boolean squashed(Node node, int depth) { return depth > 0 && node.value == null && node.numChildren == 1; }
+		
+		private static void count(PrefixTreeStats stats, Node node, int depth, int label) {
+			stats.node(depth, node.layout(), node.numChildren, node.children == null ? 0 : node.children.length,
+					node.value, squashed(node, depth) ? 0 : label);
+		}
+		
+		@Override
+		protected PrefixTreeStats compute() {
+			
+			PrefixTreeStats stats = new PrefixTreeStats(alphabetSize, exactValues);
+			if (subtrie.count > PARALLEL_THRESHOLD) {
+				count(stats, subtrie, depth, label);
+				int next = squashed(subtrie, depth) ? label + 1 : 1;
+				List<StatsTask> tasks = new ArrayList<>();
+				for (int i = 0; subtrie.children != null && i < subtrie.children.length; i++)
+					if (subtrie.children[i] != null)
+						tasks.add(new StatsTask(subtrie.children[i], depth + 1, next, alphabetSize, exactValues));
+				for (StatsTask task : invokeAll(tasks))
+					stats.merge(task.join());
+				return stats;
+			}
+			
+			Node[] stack = new Node[16];
+			int[] depths = new int[16], labels = new int[16];
+			int top = 0;
+			stack[top] = subtrie;
+			depths[top] = depth;
+			labels[top++] = label;
+			while (top > 0) {
+				Node cur = stack[--top];
+				int d = depths[top], l = labels[top];
+				count(stats, cur, d, l);
+				if (cur.children == null)
+					continue;
+				int next = squashed(cur, d) ? l + 1 : 1;
+				for (Node child : cur.children) {
+					if (child == null)
+						continue;
+					if (top == stack.length) {
+						stack = Arrays.copyOf(stack, top * 2);
+						depths = Arrays.copyOf(depths, top * 2);
+						labels = Arrays.copyOf(labels, top * 2);
+					}
+					stack[top] = child;
+					depths[top] = d + 1;
+					labels[top++] = next;
+				}
+			}
+			return stats;
+		}
+	}
+	
+	@Override
+	public Stream<String> streamKeysMatchingPrefix(String prefix) {
+		return stream(prefix, (key, value) -> key);
+	}
+	@Override
+	public Stream<Map.Entry<String, String>> streamEntriesMatchingPrefix(String prefix) {
+		return stream(prefix, AbstractMap.SimpleImmutableEntry::new);
+	}
+	
+	private <T> Stream<T> stream(String prefix, BiFunction<String, String, T> output) {
+		
+		Node subtrie = traverse(root, prefix, ALPHABET);
+		if (subtrie == null)
+			return Stream.empty();
+		return StreamSupport.stream(new PrefixSpliterator<>(subtrie, prefix, output), false);
+	}
+	/**************************************************************************************
+	 * Lazy version of preOrderKeys that can be split for parallel streams
+	 * 
+	 *   walker          pending
+	 *   _________      ______ ________________ ______
+	 *  |   AA    | -> |  AC  | AG (node only) |  AT  | ...
+	 *  |_________|    |______|________________|______|
+	 *  (in progress)  (subtries, or single nodes, still to do, in order)
+	 * 
+	 * trySplit hands the first half of that over. If there is just the one subtrie
+	 * left it is opened up at its children first, so the work divides at child
+	 * boundaries and each half walks separate subtries
+	 **************************************************************************************/
+	private static class PrefixSpliterator<T> implements Spliterator<T> {
+		
+		private static class Pending {
+			final Node node;
+			final String key;
+			final boolean nodeOnly; // just the node's own value, the children are pending separately
+			
+			Pending(Node node, String key, boolean nodeOnly) {
+				this.node = node;
+				this.key = key;
+				this.nodeOnly = nodeOnly;
+			}
+			
+			int estimate() { return nodeOnly ? 1 : node.count; }
+		}
+		
+		private final ArrayDeque<Pending> pending = new ArrayDeque<>();
+		private final BiFunction<String, String, T> output;
+		private Walker walker = null;
+		
+		PrefixSpliterator(Node subtrie, String key, BiFunction<String, String, T> output) {
+			this.output = output;
+			pending.add(new Pending(subtrie, key, false));
+		}
+		
+		private PrefixSpliterator(BiFunction<String, String, T> output) { this.output = output; }
+		
+		@Override
+		public boolean tryAdvance(Consumer<? super T> action) {
+			
+			while (true) {
+				if (walker != null) {
+					Node node = walker.next();
+					if (node != null) {
+						action.accept(output.apply(walker.key(), node.getValue()));
+						return true;
+					}
+					walker = null;
+				}
+				
+				Pending next = pending.poll();
+				if (next == null)
+					return false;
+				if (!next.nodeOnly)
+					walker = new Walker(next.node, next.key);
+				else if (next.node.getValue() != null) {
+					action.accept(output.apply(next.key, next.node.getValue()));
+					return true;
+				}
+			}
+		}
+		
+		@Override
+		public Spliterator<T> trySplit() {
+			
+			while (walker == null && pending.size() == 1 && !pending.peek().nodeOnly) {
+				Pending only = pending.poll();
+				if (only.node.getValue() != null)
+					pending.add(new Pending(only.node, only.key, true));
+				for (Node child = only.node.nextChild(0); child != null; child = child.nextSibling())
+					pending.add(new Pending(child, only.key + child.key, false));
+				if (pending.isEmpty())
+					return null;
+			}
+			
+			int half = pending.size() / 2;
+			if (half == 0)
+				return null;
+			
+			PrefixSpliterator<T> prefix = new PrefixSpliterator<>(output);
+			prefix.walker = walker;
+			walker = null;
+			for (int i = 0; i < half; i++)
+				prefix.pending.add(pending.poll());
+			return prefix;
+		}
+		
+		@Override
+		public long estimateSize() {
+			
+			long size = walker == null ? 0 : walker.subtrie.count;
+			for (Pending p : pending)
+				size += p.estimate();
+			return size;
+		}
+		
+		@Override
+		public int characteristics() { return ORDERED | DISTINCT | NONNULL; }
+	}
+	
+	/**************************************************************************************
+	 * Bulk loading
+	 * 
+	 * Builds a whole tree from key-value pairs without going through put, which
+	 * walks down from the root and checks every character for every key. Later
+	 * pairs win over earlier ones with the same key, same as a loop of puts
+	 * 
+	 * Sorted input (by key) is built in one linear pass, parallel streams are
+	 * sorted and then built in parallel, one partition per first character
+	 **************************************************************************************/
+	public static PrefixTree build(String validChars, Iterable<? extends Map.Entry<String, String>> entries) {
+		return build(validChars, entries.iterator());
+	}
+	
+	private static PrefixTree build(String validChars, Iterator<? extends Map.Entry<String, String>> entries) {
+		
+		PrefixTree tree = new PrefixTree(validChars);
+		Loader loader = new Loader(tree, tree.root, 0, true);
+		while (entries.hasNext()) {
+			Map.Entry<String, String> entry = entries.next();
+			loader.add(entry.getKey(), entry.getValue());
+		}
+		loader.finish();
+		
+		tree.size = loader.size;
+		tree.keySum = loader.keySum;
+		tree.numNodes += loader.nodes;
+		return tree;
+	}
+	
+	public static PrefixTree build(String validChars, Stream<? extends Map.Entry<String, String>> entries) {
+		
+		if (!entries.isParallel())
+			return build(validChars, entries.iterator());
+		
+		PrefixTree tree = new PrefixTree(validChars);
+		@SuppressWarnings("unchecked")
+		Map.Entry<String, String>[] sorted = entries.toArray(Map.Entry[]::new);
+		for (Map.Entry<String, String> entry : sorted) {
+			if (entry.getKey() == null) throw new IllegalArgumentException("null key");
+			if (entry.getValue() == null) throw new IllegalArgumentException();
+		}
+		Arrays.parallelSort(sorted, Map.Entry.comparingByKey()); // stable, so the last duplicate still wins
+		
+		// partition by first character, the root and its children are set up here so
+		// every task only ever touches its own subtrie
+		int at = 0;
+		while (at < sorted.length && sorted[at].getKey().isEmpty())
+			at++;
+		Loader top = new Loader(tree, tree.root, 0, true);
+		if (at > 0)
+			top.add("", sorted[at - 1].getValue());
+		
+		List<Loader> loaders = new ArrayList<>();
+		List<ForkJoinTask<?>> tasks = new ArrayList<>();
+		while (at < sorted.length) {
+			int from = at;
+			char first = sorted[from].getKey().charAt(0);
+			while (at < sorted.length && sorted[at].getKey().charAt(0) == first)
+				at++;
+			int to = at;
+			
+			Node child = tree.new Node(tree.root, first);
+			tree.root.addChild(tree.ALPHABET.index(first), child);
+			Loader loader = new Loader(tree, child, 1, true);
+			loaders.add(loader);
+			tasks.add(ForkJoinTask.adapt(() -> {
+				for (int i = from; i < to; i++)
+					loader.add(sorted[i].getKey(), sorted[i].getValue());
+				loader.finish();
+			}).fork());
+		}
+		for (ForkJoinTask<?> task : tasks)
+			task.join();
+		
+		top.finish();
+		tree.size = top.size;
+		tree.keySum = top.keySum;
+		tree.numNodes += loaders.size();
+		for (Loader loader : loaders) {
+			tree.root.count += loader.size;
+			tree.size += loader.size;
+			tree.keySum += loader.keySum;
+			tree.numNodes += loader.nodes;
+		}
+		return tree;
+	}
+	/**************************************************************************************
+	 * Keeps the path to the last key on a stack, each key only goes down from where it
+	 * shares a prefix with the one before. Counts build up per level and are added to the
+	 * parent when a node comes off the stack, so nothing walks up to the root per key
+	 * 
+	 * While the keys keep increasing the new branch can't exist yet, so there are no
+	 * child lookups at all. The same key again (or the top's own key, "" for the root)
+	 * doesn't add anything, so it doesn't count as out of order. After the first key that
+	 * is, it looks them up as usual
+	 **************************************************************************************/
+	static class Loader {
+		
+		private final PrefixTree tree;
+		private final int base;
+		private Node[] path = new Node[16];
+		private int[] added = new int[16]; // keys added below each node on the path since it was pushed
+		private int depth;
+		private boolean sorted; // so far, and the tree started out empty
+		int size = 0, keySum = 0, nodes = 0;
+		
+		/*
+		 * Loads keys that all go through top, which is at the given depth
+		 */
+		Loader(PrefixTree tree, Node top, int base, boolean empty) {
+			this.tree = tree;
+			this.base = base;
+			this.sorted = empty;
+			path[base] = top;
+			depth = base;
+		}
+		
+		void add(String key, String value) {
+			
+			if (key == null) throw new IllegalArgumentException("null key");
+			if (value == null) throw new IllegalArgumentException();
+			
+			int common = base;
+			while (common < depth && common < key.length() && key.charAt(common) == path[common + 1].key)
+				common++;
+			boolean same = common == depth && common == key.length(); // where the last one ended
+			sorted &= same || common < key.length() && (common == depth || key.charAt(common) > path[common + 1].key);
+			boolean fresh = sorted; // the rest of the path can't be there yet
+			
+			while (depth > common)
+				pop();
+			if (key.length() >= path.length) {
+				path = Arrays.copyOf(path, key.length() * 2);
+				added = Arrays.copyOf(added, key.length() * 2);
+			}
+			
+			for (; depth < key.length(); depth++) {
+				Node parent = path[depth];
+				char ch = key.charAt(depth);
+				int index = tree.ALPHABET.index(ch);
+				Node child = fresh ? null : parent.child(index);
+				if (child == null) {
+					parent.addChild(index, child = tree.new Node(parent, ch));
+					nodes++;
+					fresh = true; // everything below is new
+				}
+				path[depth + 1] = child;
+				added[depth + 1] = 0;
+			}
+			
+			Node node = path[depth];
+			if (node.value == null) {
+				size++;
+				keySum += key.length();
+				added[depth]++;
+			}
+			node.value = value;
+		}
+		
+		boolean sorted() { return sorted; }
+		
+		private void pop() {
+			path[depth].count += added[depth];
+			added[depth - 1] += added[depth];
+			depth--;
+		}
+		
+		void finish() {
+			while (depth > base)
+				pop();
+			path[base].count += added[base];
+			added[base] = 0;
 		}
 	}
 }
@@ -0,0 +1,283 @@
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/******************************************************************************
+ * Shape and estimated heap of a PrefixTree, see PrefixTree.stats()
+ *
+ *  - nodes per depth, nodes per number of children (fan-out)
+ *  - unary nodes: one child and no value (and not the root), the ones a
+ *    radix tree squashes into an edge label
+ *  - nodes and bytes per child layout (leaf, sparse, indexed, direct)
+ *  - values: how many, how many separate String objects, how many
+ *    different ones, and their bytes as they are and if they were pooled
+ *
+ * Separate and different values are estimated by default, with two small
+ * HyperLogLog sketches (one on identity hashes, one on String hashes, 1KB
+ * each, merged register by register), so the value figures are off by a
+ * few percent on big maps and the bytes are scaled from the average value.
+ * Asking for exact values keeps every value in an identity set and a hash
+ * set instead, merged at every join: memory and hashing in the number of
+ * keys, only worth it on small maps or in tests
+ *
+ * and what the same keys would take as a RadixTree (path compressed, 2 bit
+ * labels for DNA) or as a MappedPrefixMap snapshot (fixed size records and a
+ * string pool), to tell when a big map is worth moving.
+ *
+ * Bytes are worked out from the field layout for a 64 bit JVM with
+ * compressed oops (12 byte headers, 4 byte references, 8 byte alignment),
+ * not measured, so they are about right rather than exact. Strings are
+ * counted as compact (1 byte per char) unless they need 2
+ ******************************************************************************/
+public final class PrefixTreeStats {
+
+	public enum Layout { LEAF, SPARSE, INDEXED, DIRECT }
+
+	static final int HEADER = 12, ARRAY_HEADER = 16, REF = 4;
+	static final int NODE_BYTES = align(HEADER + 5 * REF + 4 + 2 + 2), // outer, value, parent, children, map, count, key, numChildren
+				RADIX_NODE_BYTES = align(HEADER + 5 * REF + 4 * 4), // outer, value, label, parent, children, count, depth, length, numChildren
+				STRING_BYTES = align(HEADER + REF + 4 + 1 + 1); // value, hash, coder, hashIsZero
+
+	private final int alphabetSize, bitsPerChar;
+	private long nodes = 0, keys = 0, unary = 0, nodeBytes = 0,
+				radixNodes = 0, radixBytes = 0;
+	private long[] depths = new long[16];
+	private int maxDepth = 0;
+	private final long[] fanOut, layoutNodes = new long[4], layoutBytes = new long[4];
+	private long allValueBytes = 0; // every value, shared or not
+	private final Sketch instanceSketch, distinctSketch;
+	private final Set<String> instances, distinct; // exact, or null
+
+	PrefixTreeStats(int alphabetSize, boolean exactValues) {
+		this.alphabetSize = alphabetSize;
+		instanceSketch = exactValues ? null : new Sketch();
+		distinctSketch = exactValues ? null : new Sketch();
+		instances = exactValues ? Collections.newSetFromMap(new IdentityHashMap<>()) : null;
+		distinct = exactValues ? new HashSet<>() : null;
+		bitsPerChar = Math.max(1, 32 - Integer.numberOfLeadingZeros(alphabetSize - 1));
+		fanOut = new long[alphabetSize + 1];
+	}
+
+	static int align(long bytes) { return (int) ((bytes + 7) & ~7); }
+
+	static long stringBytes(String s) {
+		boolean latin1 = true;
+		for (int i = 0; i < s.length() && latin1; i++)
+			latin1 = s.charAt(i) < 256;
+		return STRING_BYTES + align(ARRAY_HEADER + (long) s.length() * (latin1 ? 1 : 2));
+	}
+
+	/*
+	 * Counts one node: its depth, layout, number of children, the length of
+	 * its children array (0 for none), its value (or null), and the length of
+	 * the edge label it would have in a radix tree (0 if it would be squashed)
+	 */
+	void node(int depth, Layout layout, int children, int arrayLength, String value, int radixLabel) {
+
+		nodes++;
+		if (depth >= depths.length)
+			depths = Arrays.copyOf(depths, Math.max(depth + 1, depths.length * 2));
+		depths[depth]++;
+		maxDepth = Math.max(maxDepth, depth);
+		fanOut[children]++;
+
+		long bytes = NODE_BYTES + (arrayLength == 0 ? 0 : align(ARRAY_HEADER + (long) arrayLength * REF))
+				+ (layout == Layout.INDEXED ? align(ARRAY_HEADER + 2L * alphabetSize) : 0);
+		layoutNodes[layout.ordinal()]++;
+		layoutBytes[layout.ordinal()] += bytes;
+		nodeBytes += bytes;
+
+		if (value != null) {
+			keys++;
+			allValueBytes += stringBytes(value);
+			if (instances != null) {
+				instances.add(value);
+				distinct.add(value);
+			} else {
+				instanceSketch.add(System.identityHashCode(value));
+				distinctSketch.add(value.hashCode());
+			}
+		} else if (children == 1 && depth > 0) {
+			unary++;
+		}
+
+		if (value != null || children != 1 || depth == 0) {
+			long words = ((long) radixLabel * bitsPerChar + 63) / 64;
+			radixNodes++;
+			radixBytes += RADIX_NODE_BYTES + (words == 0 ? 0 : align(ARRAY_HEADER + 8 * words))
+					+ (children == 0 ? 0 : align(ARRAY_HEADER + (long) alphabetSize * REF));
+		}
+	}
+
+	PrefixTreeStats merge(PrefixTreeStats other) {
+
+		nodes += other.nodes;
+		keys += other.keys;
+		unary += other.unary;
+		nodeBytes += other.nodeBytes;
+		radixNodes += other.radixNodes;
+		radixBytes += other.radixBytes;
+		if (other.depths.length > depths.length)
+			depths = Arrays.copyOf(depths, other.depths.length);
+		for (int d = 0; d < other.depths.length; d++)
+			depths[d] += other.depths[d];
+		maxDepth = Math.max(maxDepth, other.maxDepth);
+		for (int i = 0; i < fanOut.length; i++)
+			fanOut[i] += other.fanOut[i];
+		for (int i = 0; i < layoutNodes.length; i++) {
+			layoutNodes[i] += other.layoutNodes[i];
+			layoutBytes[i] += other.layoutBytes[i];
+		}
+		allValueBytes += other.allValueBytes;
+		if (instances != null) {
+			instances.addAll(other.instances);
+			distinct.addAll(other.distinct);
+		} else {
+			instanceSketch.merge(other.instanceSketch);
+			distinctSketch.merge(other.distinctSketch);
+		}
+		return this;
+	}
+
+	/*
+	 * HyperLogLog, 2^10 one byte registers (about 3% standard error), with
+	 * linear counting while registers are still empty so small counts come
+	 * out right. Same adds in any order and any merges give the same
+	 * registers, so a parallel run estimates the same as a sequential one
+	 */
+	static final class Sketch {
+
+		private static final int BITS = 10, M = 1 << BITS;
+		private final byte[] registers = new byte[M];
+
+		void add(int hash) {
+			long h = hash * 0x9E3779B97F4A7C15L; // spread the 32 bits over all 64
+			h ^= h >>> 33;
+			h *= 0xFF51AFD7ED558CCDL;
+			h ^= h >>> 33;
+			int i = (int) (h >>> (64 - BITS));
+			byte rank = (byte) (Long.numberOfLeadingZeros(h << BITS | 1L << (BITS - 1)) + 1);
+			if (rank > registers[i])
+				registers[i] = rank;
+		}
+
+		void merge(Sketch other) {
+			for (int i = 0; i < M; i++)
+				registers[i] = (byte) Math.max(registers[i], other.registers[i]);
+		}
+
+		long estimate() {
+			double sum = 0;
+			int empty = 0;
+			for (byte r : registers) {
+				sum += Math.scalb(1.0, -r);
+				if (r == 0)
+					empty++;
+			}
+			double e = 0.7213 / (1 + 1.079 / M) * M * M / sum;
+			if (e <= 2.5 * M && empty > 0)
+				e = M * Math.log((double) M / empty);
+			return Math.round(e);
+		}
+	}
+
+	/***************************************************************************
+	 * Shape
+	 ***************************************************************************/
+	public long nodes() { return nodes; }
+	public long keys() { return keys; }
+	public int maxDepth() { return maxDepth; }
+	public long nodesAtDepth(int depth) { return depth < 0 || depth >= depths.length ? 0 : depths[depth]; }
+	/*
+	 * Nodes with the given number of children
+	 */
+	public long fanOut(int children) { return children < 0 || children >= fanOut.length ? 0 : fanOut[children]; }
+	public long unaryNodes() { return unary; }
+	public long nodes(Layout layout) { return layoutNodes[layout.ordinal()]; }
+
+	/***************************************************************************
+	 * Bytes
+	 ***************************************************************************/
+	/*
+	 * Node objects plus their children (and index) arrays
+	 */
+	public long bytes(Layout layout) { return layoutBytes[layout.ordinal()]; }
+	public long nodeBytes() { return nodeBytes; }
+
+	public boolean exactValues() { return instances != null; }
+	public long valueInstances() { return instances != null ? instances.size() : Math.min(keys, instanceSketch.estimate()); }
+	public long distinctValues() { return distinct != null ? distinct.size() : Math.min(valueInstances(), distinctSketch.estimate()); }
+	/*
+	 * Every separate value String once
+	 */
+	public long valueBytes() {
+		if (instances == null)
+			return scaled(valueInstances());
+		long bytes = 0;
+		for (String value : instances)
+			bytes += stringBytes(value);
+		return bytes;
+	}
+	/*
+	 * The values if equal ones were all the same object
+	 */
+	public long pooledValueBytes() {
+		if (distinct == null)
+			return scaled(distinctValues());
+		long bytes = 0;
+		for (String value : distinct)
+			bytes += stringBytes(value);
+		return bytes;
+	}
+
+	private long scaled(long values) { return keys == 0 ? 0 : Math.round((double) allValueBytes * values / keys); }
+
+	public long retainedBytes() { return nodeBytes + valueBytes(); }
+
+	/*
+	 * The same map as a RadixTree (values as they are now)
+	 */
+	public long radixBytes() { return radixBytes + valueBytes(); }
+	public long radixNodes() { return radixNodes; }
+	/*
+	 * The same map as a MappedPrefixMap snapshot, off the heap (fixed size
+	 * records, every distinct value once as UTF-16)
+	 */
+	public long packedBytes() {
+		long bytes = 7 * 4 + 2L * alphabetSize + nodes * (12 + 4 * ((alphabetSize + 31) / 32));
+		if (distinct == null) // chars from the average heap size, near enough
+			return bytes + distinctValues() * 4 + 2 * Math.max(0, pooledValueBytes() - distinctValues() * (STRING_BYTES + ARRAY_HEADER));
+		for (String value : distinct)
+			bytes += 4 + 2L * value.length();
+		return bytes;
+	}
+
+	public long radixSavings() { return retainedBytes() - radixBytes(); }
+	public long packedSavings() { return retainedBytes() - packedBytes(); }
+	public long poolingSavings() { return valueBytes() - pooledValueBytes(); }
+
+	@Override
+	public String toString() {
+
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("%d keys, %d nodes (%d unary), depth up to %d%n", keys, nodes, unary, maxDepth));
+		sb.append(String.format("%-8s %12s %14s%n", "layout", "nodes", "bytes"));
+		for (Layout layout : Layout.values())
+			sb.append(String.format("%-8s %12d %14d%n", layout, nodes(layout), bytes(layout)));
+		sb.append(String.format("values%s: %d objects, %d distinct, %d bytes (%d pooled)%n", exactValues() ? "" : " (estimated)",
+				valueInstances(), distinctValues(), valueBytes(), pooledValueBytes()));
+		sb.append(String.format("retained %d bytes, as radix tree %d (%d nodes), as snapshot %d%n",
+				retainedBytes(), radixBytes(), radixNodes, packedBytes()));
+
+		sb.append(String.format("%-9s %12s%n", "children", "nodes"));
+		for (int c = 0; c < fanOut.length; c++)
+			if (fanOut[c] != 0)
+				sb.append(String.format("%-9d %12d%n", c, fanOut[c]));
+		sb.append(String.format("%-9s %12s%n", "depth", "nodes"));
+		for (int d = 0; d <= maxDepth; d++)
+			sb.append(String.format("%-9d %12d%n", d, depths[d]));
+		return sb.toString();
+	}
+}
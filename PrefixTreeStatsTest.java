@@ -0,0 +1,99 @@
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+public class PrefixTreeStatsTest {
+
+	@Test
+	public void testShape() {
+		PrefixTree t = new PrefixTree("ACTG");
+		t.put("GATTACA", "movie");
+		t.put("GATC", "x");
+		t.put("GA", "x");
+		PrefixTreeStats s = t.stats(ForkJoinPool.commonPool(), true);
+
+		assertEquals(9, s.nodes());
+		assertEquals(3, s.keys());
+		assertEquals(7, s.maxDepth());
+		assertEquals(1, s.nodesAtDepth(0));
+		assertEquals(2, s.nodesAtDepth(4));
+		assertEquals(0, s.nodesAtDepth(8));
+		assertEquals(2, s.fanOut(0));
+		assertEquals(6, s.fanOut(1));
+		assertEquals(1, s.fanOut(2));
+		assertEquals(4, s.unaryNodes()); // G, GATT, GATTA, GATTAC
+		assertEquals(5, s.radixNodes()); // root, GA, GAT, GATTACA, GATC
+		assertEquals(2, s.nodes(PrefixTreeStats.Layout.LEAF));
+		assertEquals(6, s.nodes(PrefixTreeStats.Layout.SPARSE));
+		assertEquals(1, s.nodes(PrefixTreeStats.Layout.DIRECT)); // 2 children need 4 slots, all of ACTG
+
+		assertEquals(2, s.valueInstances()); // "x" is the same literal twice
+		assertEquals(2, s.distinctValues());
+		assertEquals(0, s.poolingSavings());
+		assertEquals(s.nodeBytes(), s.bytes(PrefixTreeStats.Layout.LEAF) + s.bytes(PrefixTreeStats.Layout.SPARSE)
+				+ s.bytes(PrefixTreeStats.Layout.DIRECT));
+		assertTrue(s.radixSavings() > 0);
+		assertTrue(s.packedSavings() > 0);
+	}
+
+	@Test
+	public void testLayouts() {
+		String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789";
+		PrefixTree t = new PrefixTree(alphabet);
+		for (int i = 0; i < alphabet.length(); i++)
+			t.put(alphabet.substring(i, i + 1), "v"); // root goes direct
+		for (int i = 0; i < 20; i++)
+			t.put("A" + alphabet.charAt(i), "v"); // A goes indexed
+		PrefixTreeStats s = t.stats();
+		assertEquals(1, s.nodes(PrefixTreeStats.Layout.DIRECT));
+		assertEquals(1, s.nodes(PrefixTreeStats.Layout.INDEXED));
+		assertEquals(alphabet.length() - 1 + 20, s.nodes(PrefixTreeStats.Layout.LEAF));
+		assertEquals(1, s.fanOut(alphabet.length()));
+		assertEquals(1, s.fanOut(20));
+	}
+
+	@Test
+	public void testParallel() {
+		PrefixTree t = new PrefixTree("ACGT");
+		Random RNG = new Random(17);
+		for (int i = 0; i < 50000; i++) {
+			char[] key = new char[5 + RNG.nextInt(20)];
+			for (int j = 0; j < key.length; j++)
+				key[j] = "ACGT".charAt(RNG.nextInt(4));
+			t.put(new String(key), "value " + RNG.nextInt(100));
+		}
+		PrefixTreeStats parallel = t.stats(ForkJoinPool.commonPool(), true), single, sketched, sketchedSingle;
+		ForkJoinPool pool = new ForkJoinPool(1);
+		try {
+			single = t.stats(pool, true);
+			sketchedSingle = t.stats(pool);
+		} finally {
+			pool.shutdown();
+		}
+		sketched = t.stats();
+
+		assertEquals(t.countPrefixes() + 1, parallel.nodes());
+		assertEquals(t.size(), parallel.keys());
+		assertEquals(single.toString(), parallel.toString());
+		assertEquals(100, parallel.distinctValues());
+		assertEquals(t.size(), parallel.valueInstances());
+		
+		assertFalse(sketched.exactValues());
+		assertEquals(sketchedSingle.toString(), sketched.toString());
+		assertEquals(100, sketched.distinctValues(), 3);
+		assertEquals(t.size(), sketched.valueInstances(), t.size() / 20);
+		assertEquals(parallel.valueBytes(), sketched.valueBytes(), parallel.valueBytes() / 20);
+		assertEquals(parallel.packedBytes(), sketched.packedBytes(), parallel.packedBytes() / 20);
+
+		long nodes = 0, unary = 0;
+		for (int d = 0; d <= parallel.maxDepth(); d++)
+			nodes += parallel.nodesAtDepth(d);
+		for (int c = 0; c <= 4; c++)
+			unary += c == 1 ? parallel.fanOut(c) : 0;
+		assertEquals(parallel.nodes(), nodes);
+		assertTrue(parallel.unaryNodes() <= unary);
+		assertEquals(parallel.nodes() - parallel.unaryNodes(), parallel.radixNodes());
+	}
+}
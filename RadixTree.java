@@ -0,0 +1,319 @@
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/******************************************************************************
+ * Path compressed (PATRICIA style) version of PrefixTree
+ *
+ * Only keys and real branch points get a node, everything in between is
+ * squashed into the label of the edge leading to the node:
+ *
+ *   PrefixTree:  (root)-G-A-T-T-A-C-A        RadixTree:  (root)-GAT-T-ACA
+ *                           \                                       \
+ *                            C                                       C
+ *
+ * countPrefixes() still counts every implicit prefix: each label character
+ * is exactly one prefix, so the prefix count is the total label length
+ *
+ * Labels (and keys while they are being looked up) are bit packed, see
+ * PackedSequence, 2 bits per base for A, C, G, T, so label comparisons run
+ * a whole word at a time
+ ******************************************************************************/
+public class RadixTree implements PrefixMap {
+
+	protected class Node {
+		/**********************************************
+		 *               ^
+		 *       ________|________ __________________
+		 * Node:|        |        |                  |
+		 *      |  parent: Node   |  value: String   |
+		 *      |_________________|__________________|
+		 *      |                 |                  |
+		 *      |  label: long[]  |   count : int    |
+		 *      | (edge from the  | (keys in subtrie)|
+		 *      | parent, packed) |   depth : int    |
+		 *      |_________________|__________________|
+		 *      |        |        |        |         |
+		 *  <---  children : Node array (created lazily) --->
+		 *      |________|___|____|___|____|_________|
+		 *                   |        |
+		 *                   V        V
+		 **********************************************/
+		String value = null;
+		int count = 0; // values in this node and everything below it
+		final int depth; // length of the key ending at this node, splits and merges never change it
+		long[] label;
+		int length; // of the label
+		Node parent;
+		Node[] children = null; // indexed by the first character of the child's label
+		int numChildren = 0;
+
+		Node(Node parent, long[] label, int length, int depth) {
+			this.parent = parent;
+			this.label = label;
+			this.length = length;
+			this.depth = depth;
+		}
+
+		Node getChild(int index) { return children == null ? null : children[index]; }
+
+		void setChild(int index, Node child) {
+			if (children == null)
+				children = new Node[ALPHABET.size()];
+			if (children[index] == null)
+				numChildren++;
+			children[index] = child;
+			child.parent = this;
+		}
+
+		void removeChild(int index) {
+			children[index] = null;
+			if (--numChildren == 0)
+				children = null;
+		}
+
+		/*
+		 * first child whose label starts with an index >= from (or null)
+		 */
+		Node nextChild(int from) {
+			if (children != null)
+				for (int i = from; i < children.length; i++)
+					if (children[i] != null)
+						return children[i];
+			return null;
+		}
+
+		Node onlyChild() { return numChildren == 1 ? nextChild(0) : null; }
+
+		int index() { return PACKING.get(label, 0); }
+	}
+	/***************************************************************************
+	 * Instance:
+	 *  __________________________ ________________
+	 * |                          |                |
+	 * |        size : int        |                |
+	 * |     (number of keys)     |  root : Node   |
+	 * |--------------------------|  (empty label) |
+	 * |       keySum : int       |                |
+	 * |  (Combined key lengths)  |                |
+	 * |--------------------------|        -------------------->
+	 * |   numPrefixes : int      |                |
+	 * | (Combined label lengths) |                |
+	 * |__________________________|________________|
+	 *
+	 *************************************************************************/
+	private final Alphabet ALPHABET;
+	private final PackedSequence PACKING;
+	private final Node root;
+	private int size = 0,
+				keySum = 0,
+				numPrefixes = 0;
+
+	public RadixTree(String validChars) {
+		ALPHABET = new Alphabet(validChars);
+		PACKING = new PackedSequence(ALPHABET);
+		root = new Node(null, new long[0], 0, 0);
+	}
+
+	public RadixTree() { this("ACGT"); }
+
+	@Override
+	public boolean isEmpty() { return size == 0; }
+	@Override
+	public int size() { return size; }
+	@Override
+	public int countPrefixes() { return numPrefixes; }
+	@Override
+	public int sumKeyLengths() { return keySum; }
+
+	@Override
+	public String get(String key) {
+
+		Node pos = traverse(key, true);
+		return pos == null ? null : pos.value;
+	}
+	@Override
+	public String put(String key, String value) {
+
+		long[] bits = PACKING.encode(key); // validates as well
+		if (value == null) throw new IllegalArgumentException();
+
+		Node pos = root;
+		int i = 0, length = key.length();
+		while (i < length) {
+
+			int index = PACKING.get(bits, i);
+			Node child = pos.getChild(index);
+			if (child == null) {
+				pos = addLeaf(pos, index, bits, i, length);
+				break;
+			}
+
+			int matched = PACKING.mismatch(child.label, 0, bits, i, Math.min(child.length, length - i));
+			if (matched == child.length) {
+				pos = child;
+				i += matched;
+				continue;
+			}
+
+			// the key leaves (or ends inside) the edge, so it needs a branch point
+			pos = split(child, matched);
+			i += matched;
+			if (i < length)
+				pos = addLeaf(pos, PACKING.get(bits, i), bits, i, length);
+			break;
+		}
+
+		String prev = pos.value;
+		pos.value = value;
+		if (prev == null) {
+			keySum += key.length();
+			size++;
+			for (Node n = pos; n != null; n = n.parent)
+				n.count++;
+		}
+		return prev;
+	}
+	@Override
+	public String remove(String key) {
+
+		Node pos = traverse(key, true);
+		if (pos == null || pos.value == null)
+			return null;
+
+		String prev = pos.value;
+		pos.value = null;
+		keySum -= key.length();
+		size--;
+		for (Node n = pos; n != null; n = n.parent)
+			n.count--;
+
+		if (pos == root)
+			return prev;
+
+		if (pos.numChildren == 0) {
+			Node parent = pos.parent;
+			parent.removeChild(pos.index());
+			numPrefixes -= pos.length;
+			if (parent != root && parent.value == null && parent.numChildren == 1)
+				merge(parent);
+		} else if (pos.numChildren == 1) {
+			merge(pos);
+		}
+		return prev;
+	}
+	/***************************************************************************
+	 * Returns the node where the key ends (exact) or the highest node whose
+	 * key starts with the given one (not exact), null if there is no such node
+	 * The key is validated up front, while it is packed
+	 ***************************************************************************/
+	private Node traverse(String key, boolean exact) {
+
+		long[] bits = PACKING.encode(key);
+
+		Node pos = root;
+		int i = 0, length = key.length();
+		while (i < length) {
+
+			Node child = pos.getChild(PACKING.get(bits, i));
+			if (child == null)
+				return null;
+
+			int matched = PACKING.mismatch(child.label, 0, bits, i, Math.min(child.length, length - i));
+			if (matched < child.length) // key leaves or ends inside the edge
+				return (exact || i + matched < length) ? null : child;
+
+			pos = child;
+			i += matched;
+		}
+		return pos;
+	}
+
+	private Node addLeaf(Node parent, int index, long[] key, int from, int to) {
+
+		Node leaf = new Node(parent, PACKING.slice(key, from, to), to - from, to);
+		parent.setChild(index, leaf);
+		numPrefixes += leaf.length;
+		return leaf;
+	}
+	/*
+	 * Cuts the edge leading to the node after the given number of characters
+	 * and returns the new node in the middle (the number of prefixes stays)
+	 */
+	private Node split(Node node, int at) {
+
+		Node parent = node.parent;
+		int index = node.index();
+		Node mid = new Node(parent, PACKING.slice(node.label, 0, at), at,
+				node.depth - node.length + at);
+		mid.count = node.count;
+
+		node.label = PACKING.slice(node.label, at, node.length);
+		node.length -= at;
+		parent.setChild(index, mid);
+		mid.setChild(node.index(), node);
+		return mid;
+	}
+	/*
+	 * Glues a value-less node with a single child onto that child
+	 */
+	private void merge(Node node) {
+
+		Node child = node.onlyChild();
+		child.label = PACKING.concat(node.label, node.length, child.label, child.length);
+		child.length += node.length;
+		node.parent.setChild(node.index(), child);
+	}
+
+	@Override
+	public int countKeysMatchingPrefix(String prefix) {
+
+		Node subtrie = traverse(prefix, false);
+		return subtrie == null ? 0 : subtrie.count;
+	}
+	@Override
+	public List<String> getKeysMatchingPrefix(String prefix) {
+
+		List<String> keys = new ArrayList<>();
+		Node subtrie = traverse(prefix, false);
+		if (subtrie == null)
+			return keys;
+
+		// the prefix may end in the middle of the subtrie's label
+		char[] buf = new char[Math.max(16, subtrie.depth * 2)];
+		prefix.getChars(0, prefix.length(), buf, 0);
+		int rest = subtrie.depth - prefix.length();
+		PACKING.decode(subtrie.label, subtrie.length - rest, rest, buf, prefix.length());
+
+		preOrderKeys(subtrie, buf, keys, PACKING);
+		return keys;
+	}
+	/**************************************************************************************
+	 * Populates the list with keys in the subtrie given in the parameter, buf holds the
+	 * key of the subtrie, walks with the parent pointers so there is no recursion
+	 **************************************************************************************/
+	private static void preOrderKeys(Node subtrie, char[] buf, List<String> keys, PackedSequence packing) {
+
+		Node cur = subtrie;
+		if (cur.value != null)
+			keys.add(new String(buf, 0, cur.depth));
+
+		while (true) {
+			Node next = cur.nextChild(0);
+			while (next == null && cur != subtrie) {
+				next = cur.parent.nextChild(cur.index() + 1);
+				if (next == null)
+					cur = cur.parent;
+			}
+			if (next == null)
+				return;
+
+			cur = next;
+			if (buf.length < cur.depth)
+				buf = Arrays.copyOf(buf, cur.depth * 2);
+			packing.decode(cur.label, 0, cur.length, buf, cur.depth - cur.length);
+			if (cur.value != null)
+				keys.add(new String(buf, 0, cur.depth));
+		}
+	}
+}
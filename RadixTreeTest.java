@@ -0,0 +1,61 @@
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+public class RadixTreeTest extends BasicTest {
+	
+	@Override
+	protected PrefixMap create() { return new RadixTree("ACTG"); }
+	
+	/*
+	 * Alphabets that don't fill their words exactly, labels get packed at 5
+	 * and 7 bits per character with spare bits at the bottom of each word
+	 */
+	@Test
+	public void testAminoAcids() { againstHashMap(PackedSequenceTest.AMINO_ACIDS); }
+	
+	@Test
+	public void testAscii() { againstHashMap(PackedSequenceTest.ASCII); }
+	
+	private static void againstHashMap(String chars) {
+		Random RNG = new Random(5);
+		RadixTree t = new RadixTree(chars);
+		PrefixMap checker = new HMbasedPrefixMap(chars);
+		
+		// keys branching off each other at all sorts of depths, so labels get split and merged
+		List<String> keys = new ArrayList<>();
+		String stem = "";
+		for (int i = 0; i < 2000; i++) {
+			if (!keys.isEmpty() && RNG.nextInt(3) == 0) {
+				String other = keys.get(RNG.nextInt(keys.size()));
+				stem = other.substring(0, RNG.nextInt(other.length() + 1));
+			}
+			StringBuilder sb = new StringBuilder(stem);
+			for (int j = RNG.nextInt(30); j > 0; j--)
+				sb.append(chars.charAt(RNG.nextInt(chars.length())));
+			keys.add(sb.toString());
+			assertEquals(checker.put(sb.toString(), "v" + i), t.put(sb.toString(), "v" + i));
+		}
+		assertEquals(checker.size(), t.size());
+		assertEquals(checker.countPrefixes(), t.countPrefixes());
+		assertEquals(checker.sumKeyLengths(), t.sumKeyLengths());
+		
+		Collections.shuffle(keys, RNG);
+		for (String key : keys) {
+			String prefix = key.substring(0, RNG.nextInt(key.length() + 1));
+			List<String> expected = checker.getKeysMatchingPrefix(prefix);
+			Collections.sort(expected);
+			assertEquals(expected, t.getKeysMatchingPrefix(prefix));
+			assertEquals(checker.countKeysMatchingPrefix(prefix), t.countKeysMatchingPrefix(prefix));
+			assertEquals(checker.get(key), t.get(key));
+			assertEquals(checker.remove(key), t.remove(key));
+			assertEquals(checker.countPrefixes(), t.countPrefixes());
+		}
+		assertTrue(t.isEmpty());
+		assertEquals(0, t.countPrefixes());
+	}
+}
@@ -0,0 +1,145 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+/******************************************************************************
+ * PrefixMap that sends every call to a PrefixMapServer (see there for the
+ * protocol), one connection and one call at a time
+ *
+ * Malformed keys, illegal arguments and unsupported operations on the other
+ * side are thrown again here, the same types with the same messages.
+ * Anything else the map throws comes back as an IllegalStateException with
+ * the original's toString() as its message (the class itself may not even
+ * be on this side).
+ *
+ * Connecting and every response have a timeout, a server that doesn't answer
+ * in time is an UncheckedIOException (with the SocketTimeoutException as its
+ * cause) just like a broken connection (PrefixMap's methods can't throw
+ * IOException). Either way the connection is closed and the map is no use
+ * after that, a late answer would be taken for the next call's
+ ******************************************************************************/
+public class RemotePrefixMap implements PrefixMap, Closeable {
+
+	public static final int DEFAULT_TIMEOUT_MILLIS = 30_000;
+
+	private final Socket socket;
+	private final DataInputStream in;
+	private final DataOutputStream out;
+
+	public RemotePrefixMap(String host, int port, int timeoutMillis) throws IOException {
+		if (timeoutMillis <= 0) throw new IllegalArgumentException("timeout has to be positive");
+		socket = new Socket();
+		try {
+			socket.connect(new InetSocketAddress(host, port), timeoutMillis);
+			socket.setSoTimeout(timeoutMillis);
+			socket.setTcpNoDelay(true);
+		} catch (IOException e) {
+			socket.close();
+			throw e;
+		}
+		in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+		out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+	}
+
+	public RemotePrefixMap(String host, int port) throws IOException { this(host, port, DEFAULT_TIMEOUT_MILLIS); }
+
+	public RemotePrefixMap(int port) throws IOException { this("localhost", port); }
+
+	@Override
+	public void close() throws IOException { socket.close(); }
+
+	/*
+	 * Closes the connection, it may be half way through a response
+	 */
+	private UncheckedIOException broken(IOException e) {
+		try {
+			socket.close();
+		} catch (IOException suppressed) {
+			e.addSuppressed(suppressed);
+		}
+		return new UncheckedIOException(e);
+	}
+
+	/*
+	 * Sends the request and reads the status, the caller reads the result
+	 * (still holding the lock)
+	 */
+	private void call(byte op, String key, String value) {
+		try {
+			out.writeByte(op);
+			PrefixMapServer.writeString(out, key);
+			if (op == PrefixMapServer.PUT)
+				PrefixMapServer.writeString(out, value);
+			out.flush();
+
+			byte status = in.readByte();
+			switch (status) {
+			case PrefixMapServer.OK: return;
+			case PrefixMapServer.MALFORMED_KEY: throw new MalformedKeyException();
+			case PrefixMapServer.ILLEGAL_ARGUMENT: throw new IllegalArgumentException(PrefixMapServer.readString(in));
+			case PrefixMapServer.UNSUPPORTED: throw new UnsupportedOperationException(PrefixMapServer.readString(in));
+			default: throw new IllegalStateException(PrefixMapServer.readString(in));
+			}
+		} catch (IOException e) {
+			throw broken(e);
+		}
+	}
+
+	private synchronized int callForInt(byte op, String key) {
+		call(op, key, null);
+		try {
+			return in.readInt();
+		} catch (IOException e) {
+			throw broken(e);
+		}
+	}
+
+	private synchronized String callForString(byte op, String key, String value) {
+		call(op, key, value);
+		try {
+			return PrefixMapServer.readString(in);
+		} catch (IOException e) {
+			throw broken(e);
+		}
+	}
+
+	@Override
+	public boolean isEmpty() { return size() == 0; }
+	@Override
+	public int size() { return callForInt(PrefixMapServer.SIZE, null); }
+	@Override
+	public int countPrefixes() { return callForInt(PrefixMapServer.COUNT_PREFIXES, null); }
+	@Override
+	public int sumKeyLengths() { return callForInt(PrefixMapServer.SUM_KEY_LENGTHS, null); }
+
+	@Override
+	public String get(String key) { return callForString(PrefixMapServer.GET, key, null); }
+	@Override
+	public String put(String key, String value) { return callForString(PrefixMapServer.PUT, key, value); }
+	@Override
+	public String remove(String key) { return callForString(PrefixMapServer.REMOVE, key, null); }
+
+	@Override
+	public int countKeysMatchingPrefix(String prefix) { return callForInt(PrefixMapServer.COUNT_KEYS_MATCHING_PREFIX, prefix); }
+	@Override
+	public synchronized List<String> getKeysMatchingPrefix(String prefix) {
+		call(PrefixMapServer.GET_KEYS_MATCHING_PREFIX, prefix, null);
+		try {
+			int n = in.readInt();
+			List<String> keys = new ArrayList<>(n);
+			for (int i = 0; i < n; i++)
+				keys.add(PrefixMapServer.readString(in));
+			return keys;
+		} catch (IOException e) {
+			throw broken(e);
+		}
+	}
+}
@@ -0,0 +1,315 @@
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/******************************************************************************
+ * PrefixTree where every key also has a score, for "best K completions of
+ * this prefix" (autocomplete, most frequent reads...)
+ *
+ * Every node keeps its subtrie's best K keys, best first (higher score, then
+ * the smaller key). The list at a node is its own key plus the best of its
+ * children's lists, so a change only has to go up the parent chain:
+ *  - a key that got better is offered to each ancestor in turn, and the walk
+ *    stops at the first one it doesn't get into (it can't get into anything
+ *    above that either)
+ *  - a key that got worse or went away makes each ancestor that listed it
+ *    merge its children's lists again, and stops at the first that didn't
+ *
+ * topKMatchingPrefix is then a walk down to the prefix and a copy, however
+ * big the subtrie is. Asking for more than K falls back to sorting the
+ * whole subtrie
+ ******************************************************************************/
+public class ScoredPrefixTree implements PrefixMap {
+
+	private final class Node {
+		/**********************************************
+		 * Like PrefixTree's, plus:
+		 *  - key, score (only if there's a value)
+		 *  - top: best entries of the subtrie
+		 **********************************************/
+		String value = null, key = null;
+		double score = 0;
+		int count = 0;
+		final Node parent;
+		final char ch;
+		Node[] children = null;
+		int numChildren = 0;
+		Node[] top = null;
+		int topSize = 0;
+
+		Node(Node parent, char ch) { this.parent = parent; this.ch = ch; }
+
+		Node getChild(char key) { return children == null ? null : children[ALPHABET.index(key)]; }
+
+		Node getOrCreateChild(char key) {
+			int index = ALPHABET.index(key);
+			if (children == null)
+				children = new Node[ALPHABET.size()];
+			if (children[index] == null) {
+				children[index] = new Node(this, key);
+				numChildren++;
+				numNodes++;
+			}
+			return children[index];
+		}
+
+		boolean isDead() { return numChildren == 0 && value == null; }
+
+		int find(Node entry) {
+			for (int i = 0; i < topSize; i++)
+				if (top[i] == entry)
+					return i;
+			return -1;
+		}
+		/*
+		 * Puts the entry (which is new or got better) in the list if it makes the cut
+		 */
+		boolean offer(Node entry) {
+
+			int at = find(entry);
+			if (at >= 0) { // take it out, it goes back in further up
+				System.arraycopy(top, at + 1, top, at, topSize - at - 1);
+				topSize--;
+			} else if (topSize == K && !better(entry, top[K - 1])) {
+				return false;
+			}
+
+			if (top == null || (topSize == top.length && topSize < K))
+				top = Arrays.copyOf(top == null ? new Node[0] : top, Math.min(K, Math.max(1, topSize * 2)));
+			int i = Math.min(topSize, K - 1);
+			for (; i > 0 && better(entry, top[i - 1]); i--)
+				top[i] = top[i - 1];
+			top[i] = entry;
+			topSize = Math.min(topSize + 1, K);
+			return true;
+		}
+		/*
+		 * Builds the list again from this node's own entry and the children's lists
+		 */
+		void recompute() {
+
+			Node[] merged = new Node[Math.min(K, count)];
+			int n = 0;
+			int[] heads = children == null ? null : new int[children.length];
+			boolean own = value != null;
+			while (n < merged.length) {
+				Node best = own ? this : null;
+				int from = -1;
+				for (int c = 0; heads != null && c < children.length; c++) {
+					Node child = children[c];
+					if (child == null || heads[c] == child.topSize)
+						continue;
+					if (best == null || better(child.top[heads[c]], best)) {
+						best = child.top[heads[c]];
+						from = c;
+					}
+				}
+				merged[n++] = best;
+				if (from < 0)
+					own = false;
+				else
+					heads[from]++;
+			}
+			top = merged;
+			topSize = n;
+		}
+	}
+
+	private static boolean better(Node a, Node b) {
+		return a.score > b.score || (a.score == b.score && a.key.compareTo(b.key) < 0);
+	}
+
+	public static final int DEFAULT_K = 10;
+
+	private final Alphabet ALPHABET;
+	private final int K;
+	private final Node root;
+	private int size = 0,
+				keySum = 0,
+				numNodes = 1;
+
+	public ScoredPrefixTree(String validChars, int k) {
+		if (k < 1) throw new IllegalArgumentException("k has to be at least 1");
+		ALPHABET = new Alphabet(validChars);
+		K = k;
+		root = new Node(null, '\0');
+	}
+
+	public ScoredPrefixTree(String validChars) { this(validChars, DEFAULT_K); }
+
+	public ScoredPrefixTree() { this("ACGT"); }
+
+	@Override
+	public boolean isEmpty() { return size == 0; }
+	@Override
+	public int size() { return size; }
+	@Override
+	public int countPrefixes() { return numNodes - 1; }
+	@Override
+	public int sumKeyLengths() { return keySum; }
+
+	@Override
+	public String get(String key) {
+		Node pos = traverse(root, key, ALPHABET);
+		return pos == null ? null : pos.value;
+	}
+	/*
+	 * Score of the key, NaN if it isn't there
+	 */
+	public double getScore(String key) {
+		Node pos = traverse(root, key, ALPHABET);
+		return pos == null || pos.value == null ? Double.NaN : pos.score;
+	}
+	/*
+	 * Keeps the key's score if it has one, new keys score 0
+	 */
+	@Override
+	public String put(String key, String value) {
+		Node pos = traverse(root, key, ALPHABET);
+		return put(key, value, pos == null || pos.value == null ? 0 : pos.score);
+	}
+
+	public String put(String key, String value, double score) {
+
+		ALPHABET.verify(key);
+		if (value == null) throw new IllegalArgumentException();
+		if (Double.isNaN(score)) throw new IllegalArgumentException("NaN score");
+
+		Node pos = root;
+		for (int i = 0; i < key.length(); i++)
+			pos = pos.getOrCreateChild(key.charAt(i));
+
+		String prev = pos.value;
+		double old = pos.score;
+		pos.value = value;
+		pos.key = key;
+		pos.score = score;
+
+		if (prev == null) {
+			keySum += key.length();
+			size++;
+			for (Node n = pos; n != null; n = n.parent)
+				n.count++;
+		}
+		if (prev == null || score > old)
+			for (Node n = pos; n != null && n.offer(pos); n = n.parent)
+				;
+		else if (score < old)
+			demote(pos, pos);
+		return prev;
+	}
+	@Override
+	public String remove(String key) {
+
+		Node pos = traverse(root, key, ALPHABET);
+		if (pos == null || pos.value == null)
+			return null;
+
+		String prev = pos.value;
+		pos.value = null;
+		keySum -= key.length();
+		size--;
+
+		Node from = pos;
+		for (Node n = pos; n != null; n = n.parent)
+			n.count--;
+		while (from != root && from.isDead()) {
+			from.parent.children[ALPHABET.index(from.ch)] = null;
+			from.parent.numChildren--;
+			numNodes--;
+			from = from.parent;
+		}
+		demote(pos, from);
+		pos.key = null;
+		return prev;
+	}
+	/*
+	 * The entry got worse or went, fix the lists from the given node up
+	 */
+	private static void demote(Node entry, Node from) {
+		for (Node n = from; n != null && n.find(entry) >= 0; n = n.parent)
+			n.recompute();
+	}
+
+	private static Node traverse(Node from, String path, Alphabet alphabet) {
+
+		if (path == null) throw new IllegalArgumentException("null key");
+		Node cur = from;
+
+		int i = 0;
+		for (; i < path.length() && cur != null; i++)
+			cur = cur.getChild(path.charAt(i));
+
+		alphabet.verify(path, i);
+		return cur;
+	}
+
+	/**************************************************************************************
+	 * The k best keys starting with the prefix, best first
+	 * if the prefix contains any non-valid character, throw MalformedKeyException
+	 * if the prefix is null or k is negative, throw IllegalArgumentException
+	 **************************************************************************************/
+	public List<String> topKMatchingPrefix(String prefix, int k) {
+
+		if (k < 0) throw new IllegalArgumentException("negative k");
+		List<String> keys = new ArrayList<>();
+		Node subtrie = traverse(root, prefix, ALPHABET);
+		if (subtrie == null)
+			return keys;
+
+		if (k <= K) {
+			for (int i = 0; i < Math.min(k, subtrie.topSize); i++)
+				keys.add(subtrie.top[i].key);
+			return keys;
+		}
+
+		List<Node> all = new ArrayList<>();
+		collect(subtrie, all);
+		all.sort((a, b) -> better(a, b) ? -1 : better(b, a) ? 1 : 0);
+		for (int i = 0; i < Math.min(k, all.size()); i++)
+			keys.add(all.get(i).key);
+		return keys;
+	}
+
+	@Override
+	public int countKeysMatchingPrefix(String prefix) {
+		Node subtrie = traverse(root, prefix, ALPHABET);
+		return subtrie == null ? 0 : subtrie.count;
+	}
+	@Override
+	public List<String> getKeysMatchingPrefix(String prefix) {
+		List<String> keys = new ArrayList<>();
+		Node subtrie = traverse(root, prefix, ALPHABET);
+		if (subtrie != null) {
+			List<Node> nodes = new ArrayList<>();
+			collect(subtrie, nodes);
+			for (Node node : nodes)
+				keys.add(node.key);
+		}
+		return keys;
+	}
+	/*
+	 * Nodes with values in the subtrie in pre-order, explicit stack (children are
+	 * pushed backwards so they come off in order)
+	 */
+	private static void collect(Node subtrie, List<Node> out) {
+
+		Node[] stack = new Node[16];
+		int top = 0;
+		stack[top++] = subtrie;
+		while (top > 0) {
+			Node cur = stack[--top];
+			if (cur.value != null)
+				out.add(cur);
+			if (cur.children == null)
+				continue;
+			for (int i = cur.children.length - 1; i >= 0; i--) {
+				if (cur.children[i] == null)
+					continue;
+				if (top == stack.length)
+					stack = Arrays.copyOf(stack, top * 2);
+				stack[top++] = cur.children[i];
+			}
+		}
+	}
+}
@@ -0,0 +1,81 @@
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+public class ScoredPrefixTreeTest extends BasicTest {
+	
+	@Override
+	protected PrefixMap create() { return new ScoredPrefixTree("ACTG", 3); }
+	
+	@Test
+	public void testTopK() {
+		ScoredPrefixTree t = new ScoredPrefixTree("ACTG", 3);
+		t.put("GATTACA", "movie", 5);
+		t.put("GAT", "tag", 10);
+		t.put("GATC", "x", 1);
+		t.put("CAT", "meow", 7);
+		t.put("GA", "ag", 5);
+		
+		assertEquals(Arrays.asList("GAT", "CAT", "GA"), t.topKMatchingPrefix("", 3));
+		assertEquals(Arrays.asList("GAT", "GA", "GATTACA"), t.topKMatchingPrefix("G", 3));
+		assertEquals(Arrays.asList("GAT"), t.topKMatchingPrefix("G", 1));
+		assertEquals(Arrays.asList("GAT", "GA", "GATTACA", "GATC"), t.topKMatchingPrefix("G", 10));
+		assertEquals(Arrays.asList(), t.topKMatchingPrefix("T", 3));
+		
+		t.remove("GAT");
+		assertEquals(Arrays.asList("GA", "GATTACA", "GATC"), t.topKMatchingPrefix("G", 3));
+		t.put("GATC", "x", 100);
+		assertEquals(Arrays.asList("GATC", "CAT", "GA"), t.topKMatchingPrefix("", 3));
+		t.put("GATC", "x", 0);
+		assertEquals(Arrays.asList("CAT", "GA", "GATTACA"), t.topKMatchingPrefix("", 3));
+		assertEquals(0, t.getScore("GATC"), 0);
+		
+		t.put("GATC", "y"); // keeps the score
+		assertEquals(0, t.getScore("GATC"), 0);
+		assertTrue(Double.isNaN(t.getScore("GAT")));
+	}
+	
+	@Test
+	public void testSameAsSorting() {
+		ScoredPrefixTree t = new ScoredPrefixTree("ACTG", 5);
+		Map<String, Double> scores = new HashMap<>();
+		Random RNG = new Random(29);
+		for (int i = 0; i < 20000; i++) {
+			char[] key = new char[RNG.nextInt(7)];
+			for (int j = 0; j < key.length; j++)
+				key[j] = "ACGT".charAt(RNG.nextInt(4));
+			String k = new String(key);
+			if (RNG.nextInt(4) == 0) {
+				t.remove(k);
+				scores.remove(k);
+			} else {
+				double score = RNG.nextInt(50); // plenty of ties
+				t.put(k, "v", score);
+				scores.put(k, score);
+			}
+			
+			if (i % 1000 == 0) {
+				for (String prefix : new String[] { "", "A", "CG", "TTA" }) {
+					List<String> expected = new ArrayList<>();
+					for (String s : scores.keySet())
+						if (s.startsWith(prefix))
+							expected.add(s);
+					expected.sort((a, b) -> scores.get(a).equals(scores.get(b)) ? a.compareTo(b) : Double.compare(scores.get(b), scores.get(a)));
+					for (int n = 0; n <= 7; n++)
+						assertEquals(expected.subList(0, Math.min(n, expected.size())), t.topKMatchingPrefix(prefix, n));
+				}
+			}
+		}
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testNaNScore() {
+		new ScoredPrefixTree("ACTG").put("CAT", "meow", Double.NaN);
+	}
+}
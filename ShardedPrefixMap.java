@@ -0,0 +1,232 @@
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.IntFunction;
+
+/******************************************************************************
+ * PrefixMap split over |A|^k independent maps (shards) by the first k
+ * characters of the key, plus one more for the keys shorter than k
+ *
+ *  k = 1, ACGT:   "GATTACA" -> shard G      ""  -> short keys
+ *                 "CAT"     -> shard C      "A" -> shard A
+ *
+ * The shard number is the first k characters as a base |A| number, so
+ * shards are in key order and every prefix of fewer than k characters
+ * covers a run of neighbouring shards:
+ *  - a prefix of k or more characters is one shard
+ *  - a shorter one is its run of shards and the short keys, and the lists
+ *    just get concatenated (and merged with the short keys)
+ *
+ * Shards keep whole keys, so each shard also has the nodes for the first
+ * k - 1 characters that the shards around it have too. countPrefixes()
+ * counts those once (it is the same number as one tree with all the keys).
+ *
+ * Shards come from a factory, PrefixTrees by default, or RemotePrefixMaps
+ * to have them in other JVMs. Every call on a shard holds that shard's
+ * lock, so the map is thread safe with any shards and writers to different
+ * shards don't get in each other's way. Queries over several shards see
+ * each shard at a different moment
+ ******************************************************************************/
+public class ShardedPrefixMap implements PrefixMap {
+
+	public static final int MAX_SHARDS = 1 << 20;
+
+	private final Alphabet ALPHABET;
+	private final int k;
+	private final PrefixMap[] shards;
+	private final PrefixMap shortKeys;
+
+	/*
+	 * The factory gets the shard number, and numShards() for the short keys
+	 */
+	public ShardedPrefixMap(String validChars, int k, IntFunction<? extends PrefixMap> factory) {
+
+		ALPHABET = new Alphabet(validChars);
+		if (k < 1) throw new IllegalArgumentException("k has to be at least 1");
+		if (factory == null) throw new IllegalArgumentException("null factory");
+		if (Math.pow(ALPHABET.size(), k) > MAX_SHARDS) throw new IllegalArgumentException("too many shards");
+
+		this.k = k;
+		shards = new PrefixMap[(int) Math.pow(ALPHABET.size(), k)];
+		for (int i = 0; i < shards.length; i++)
+			shards[i] = factory.apply(i);
+		shortKeys = factory.apply(shards.length);
+	}
+
+	public ShardedPrefixMap(String validChars, int k) { this(validChars, k, i -> new PrefixTree(validChars)); }
+
+	public ShardedPrefixMap() { this("ACGT", 1); }
+
+	public int numShards() { return shards.length; }
+
+	/*
+	 * The first k characters the shard's keys start with
+	 */
+	public String routingPrefix(int shard) {
+		char[] prefix = new char[k];
+		for (int i = k - 1; i >= 0; i--, shard /= ALPHABET.size())
+			prefix[i] = ALPHABET.charAt(shard % ALPHABET.size());
+		return new String(prefix);
+	}
+
+	/*
+	 * The shard for a key, or the short keys map
+	 * if the key is null, throw IllegalArgumentException
+	 * if its first k characters aren't valid, throw MalformedKeyException
+	 */
+	private PrefixMap route(String key) {
+		if (key == null) throw new IllegalArgumentException("null key");
+		if (key.length() < k)
+			return shortKeys;
+		int shard = 0;
+		for (int i = 0; i < k; i++)
+			shard = shard * ALPHABET.size() + ALPHABET.index(key.charAt(i));
+		return shards[shard];
+	}
+
+	@Override
+	public boolean isEmpty() { return size() == 0; }
+	@Override
+	public int size() {
+		int size = 0;
+		for (PrefixMap shard : all())
+			synchronized (shard) {
+				size += shard.size();
+			}
+		return size;
+	}
+	@Override
+	public int sumKeyLengths() {
+		int sum = 0;
+		for (PrefixMap shard : all())
+			synchronized (shard) {
+				sum += shard.sumKeyLengths();
+			}
+		return sum;
+	}
+	/*
+	 * Prefixes of k or more characters are in one shard only, the shorter ones
+	 * are counted as a set: the prefixes of the short keys and of the routing
+	 * prefixes of the shards with anything in them
+	 */
+	@Override
+	public int countPrefixes() {
+
+		int count = 0;
+		Set<String> shared = new HashSet<>();
+		for (int i = 0; i < shards.length; i++) {
+			int prefixes;
+			synchronized (shards[i]) {
+				prefixes = shards[i].countPrefixes();
+			}
+			if (prefixes == 0)
+				continue;
+			count += prefixes - (k - 1);
+			String routing = routingPrefix(i);
+			for (int length = 1; length < k; length++)
+				shared.add(routing.substring(0, length));
+		}
+		List<String> keys;
+		synchronized (shortKeys) {
+			keys = shortKeys.getKeysMatchingPrefix("");
+		}
+		for (String key : keys)
+			for (int length = 1; length <= key.length(); length++)
+				shared.add(key.substring(0, length));
+		return count + shared.size();
+	}
+
+	@Override
+	public String get(String key) {
+		PrefixMap shard = route(key);
+		synchronized (shard) {
+			return shard.get(key);
+		}
+	}
+	@Override
+	public String put(String key, String value) {
+		PrefixMap shard = route(key);
+		synchronized (shard) {
+			return shard.put(key, value);
+		}
+	}
+	@Override
+	public String remove(String key) {
+		PrefixMap shard = route(key);
+		synchronized (shard) {
+			return shard.remove(key);
+		}
+	}
+
+	/***************************************************************************
+	 * Prefix queries: one shard, or the run of shards under a short prefix
+	 ***************************************************************************/
+	/*
+	 * The one shard for a prefix of k or more characters, otherwise the short
+	 * keys and then the run of |A|^(k - length) shards starting with the prefix
+	 */
+	private List<PrefixMap> covering(String prefix) {
+
+		List<PrefixMap> covering = new ArrayList<>();
+		PrefixMap shard = route(prefix);
+		covering.add(shard);
+		if (shard != shortKeys)
+			return covering;
+
+		ALPHABET.verify(prefix);
+		int first = 0, run = shards.length;
+		for (int i = 0; i < prefix.length(); i++) {
+			run /= ALPHABET.size();
+			first += ALPHABET.index(prefix.charAt(i)) * run;
+		}
+		for (int i = first; i < first + run; i++)
+			covering.add(shards[i]);
+		return covering;
+	}
+
+	private List<PrefixMap> all() {
+		List<PrefixMap> all = new ArrayList<>(Arrays.asList(shards));
+		all.add(shortKeys);
+		return all;
+	}
+
+	@Override
+	public int countKeysMatchingPrefix(String prefix) {
+
+		int count = 0;
+		for (PrefixMap shard : covering(prefix))
+			synchronized (shard) {
+				count += shard.countKeysMatchingPrefix(prefix);
+			}
+		return count;
+	}
+	@Override
+	public List<String> getKeysMatchingPrefix(String prefix) {
+
+		List<PrefixMap> covering = covering(prefix);
+		if (covering.size() == 1)
+			synchronized (covering.get(0)) {
+				return covering.get(0).getKeysMatchingPrefix(prefix);
+			}
+
+		List<String> shorter, longer = new ArrayList<>();
+		synchronized (shortKeys) {
+			shorter = shortKeys.getKeysMatchingPrefix(prefix);
+		}
+		for (PrefixMap shard : covering.subList(1, covering.size()))
+			synchronized (shard) {
+				longer.addAll(shard.getKeysMatchingPrefix(prefix)); // shards are in key order
+			}
+
+		List<String> keys = new ArrayList<>(shorter.size() + longer.size());
+		int s = 0, l = 0;
+		while (s < shorter.size() || l < longer.size())
+			if (l == longer.size() || (s < shorter.size() && shorter.get(s).compareTo(longer.get(l)) < 0))
+				keys.add(shorter.get(s++));
+			else
+				keys.add(longer.get(l++));
+		return keys;
+	}
+}
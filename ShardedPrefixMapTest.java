@@ -0,0 +1,185 @@
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class ShardedPrefixMapTest extends BasicTest {
+	
+	@Override
+	protected PrefixMap create() { return new ShardedPrefixMap("ACTG", 2); }
+	
+	@Test
+	public void testRouting() {
+		List<PrefixTree> shards = new ArrayList<>();
+		ShardedPrefixMap m = new ShardedPrefixMap("ACGT", 2, i -> {
+			PrefixTree shard = new PrefixTree("ACGT");
+			shards.add(shard);
+			return shard;
+		});
+		assertEquals(16, m.numShards());
+		assertEquals(17, shards.size());
+		assertEquals("GA", m.routingPrefix(8));
+		
+		m.put("GATTACA", "movie");
+		m.put("GA", "ag");
+		m.put("G", "short");
+		m.put("", "empty");
+		m.put("CAT", "meow");
+		assertEquals(2, shards.get(8).size()); // GA
+		assertEquals(1, shards.get(4).size()); // CA
+		assertEquals(2, shards.get(16).size()); // short keys
+		
+		assertEquals(Arrays.asList("", "CAT", "G", "GA", "GATTACA"), m.getKeysMatchingPrefix(""));
+		assertEquals(Arrays.asList("G", "GA", "GATTACA"), m.getKeysMatchingPrefix("G"));
+		assertEquals(Arrays.asList("GATTACA"), m.getKeysMatchingPrefix("GAT"));
+		assertEquals(3, m.countKeysMatchingPrefix("G"));
+		assertEquals(0, m.countKeysMatchingPrefix("T"));
+		assertEquals(5, m.size());
+		assertEquals(13, m.sumKeyLengths());
+	}
+	
+	@Test
+	public void testSameAsOneTree() {
+		Random RNG = new Random(5);
+		for (int k = 1; k <= 3; k++) {
+			ShardedPrefixMap m = new ShardedPrefixMap("ACGT", k);
+			PrefixTree t = new PrefixTree("ACGT");
+			for (int i = 0; i < 5000; i++) {
+				char[] key = new char[RNG.nextInt(8)];
+				for (int j = 0; j < key.length; j++)
+					key[j] = "ACGT".charAt(RNG.nextInt(4));
+				String s = new String(key);
+				if (RNG.nextInt(3) == 0)
+					assertEquals(t.remove(s), m.remove(s));
+				else
+					assertEquals(t.put(s, "v" + i), m.put(s, "v" + i));
+				if (i % 500 == 0)
+					assertEquals(t.countPrefixes(), m.countPrefixes());
+			}
+			assertEquals(t.size(), m.size());
+			assertEquals(t.sumKeyLengths(), m.sumKeyLengths());
+			assertEquals(t.countPrefixes(), m.countPrefixes());
+			for (String prefix : new String[] { "", "A", "CG", "TTA", "GATT" }) {
+				assertEquals(t.countKeysMatchingPrefix(prefix), m.countKeysMatchingPrefix(prefix));
+				assertEquals(t.getKeysMatchingPrefix(prefix), m.getKeysMatchingPrefix(prefix));
+			}
+		}
+	}
+	
+	@Test(expected = MalformedKeyException.class)
+	public void testMalformedShortPrefix() { new ShardedPrefixMap("ACGT", 3).getKeysMatchingPrefix("AX"); }
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testTooManyShards() { new ShardedPrefixMap("ACGT", 11); }
+	
+	@Test
+	public void testRemoteShards() throws IOException {
+		List<PrefixMapServer> servers = new ArrayList<>();
+		List<RemotePrefixMap> clients = new ArrayList<>();
+		try {
+			for (int i = 0; i < 5; i++) {
+				servers.add(new PrefixMapServer(new PrefixTree("ACGT"), 0));
+				clients.add(new RemotePrefixMap(servers.get(i).port()));
+			}
+			ShardedPrefixMap m = new ShardedPrefixMap("ACGT", 1, clients::get);
+			m.put("GATTACA", "movie");
+			m.put("GAT", "tag");
+			m.put("", "empty");
+			m.put("TAG", "\u00e9t\u00e9"); // not ASCII
+			assertEquals("movie", m.get("GATTACA"));
+			assertEquals("\u00e9t\u00e9", m.get("TAG"));
+			assertNull(m.get("GATT"));
+			assertEquals("tag", m.remove("GAT"));
+			assertEquals(Arrays.asList("", "GATTACA", "TAG"), m.getKeysMatchingPrefix(""));
+			assertEquals(3, m.size());
+			assertEquals(10, m.countPrefixes());
+			assertEquals(1, clients.get(2).size()); // G
+			
+			try {
+				m.get("GAX");
+				fail();
+			} catch (MalformedKeyException e) {}
+			try {
+				m.put("GAT", null);
+				fail();
+			} catch (IllegalArgumentException e) {}
+			try {
+				clients.get(0).get(null);
+				fail();
+			} catch (IllegalArgumentException e) {
+				assertEquals("null key", e.getMessage());
+			}
+		} finally {
+			for (RemotePrefixMap client : clients)
+				client.close();
+			for (PrefixMapServer server : servers)
+				server.close();
+		}
+		try {
+			clients.get(0).size();
+			fail();
+		} catch (UncheckedIOException e) {}
+	}
+	
+	@Test
+	public void testRemoteFailure() throws IOException {
+		PrefixTree t = new PrefixTree("ACGT") {
+			@Override
+			public int size() { throw new ArithmeticException("boom"); }
+		};
+		try (PrefixMapServer server = new PrefixMapServer(t, 0);
+				RemotePrefixMap client = new RemotePrefixMap(server.port())) {
+			try {
+				client.size();
+				fail();
+			} catch (IllegalStateException e) {
+				assertEquals(new ArithmeticException("boom").toString(), e.getMessage());
+			}
+			assertNull(client.put("GAT", "tag")); // still usable
+		}
+	}
+	
+	@Test
+	public void testRemoteTimeout() throws IOException {
+		PrefixTree t = new PrefixTree("ACGT");
+		try (PrefixMapServer server = new PrefixMapServer(t, 0);
+				RemotePrefixMap client = new RemotePrefixMap("localhost", server.port(), 100)) {
+			synchronized (t) { // the server waits for the map
+				try {
+					client.get("GAT");
+					fail();
+				} catch (UncheckedIOException e) {
+					assertTrue(e.getCause() instanceof SocketTimeoutException);
+				}
+			}
+			try {
+				client.get("GAT");
+				fail();
+			} catch (UncheckedIOException e) {} // closed after the timeout
+		}
+	}
+	
+	@Test
+	public void testOversizedString() throws IOException {
+		try (PrefixMapServer server = new PrefixMapServer(new PrefixTree("ACGT"), 0);
+				Socket socket = new Socket("localhost", server.port())) {
+			DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+			DataInputStream in = new DataInputStream(socket.getInputStream());
+			out.writeByte(PrefixMapServer.GET);
+			out.writeInt(Integer.MAX_VALUE); // and no bytes, nothing should be allocated for them
+			out.flush();
+			assertEquals(PrefixMapServer.ILLEGAL_ARGUMENT, in.readByte());
+			assertNotNull(PrefixMapServer.readString(in));
+			assertEquals(-1, in.read()); // hung up
+		}
+	}
+}
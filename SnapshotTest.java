@@ -0,0 +1,123 @@
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+public class SnapshotTest {
+	
+	private static MappedPrefixMap roundTrip(PrefixTree t) throws IOException {
+		Path file = Files.createTempFile("prefix-tree", ".snapshot");
+		file.toFile().deleteOnExit();
+		MappedPrefixMap.write(t, file);
+		return MappedPrefixMap.open(file);
+	}
+	
+	@Test
+	public void testEmpty() throws IOException {
+		MappedPrefixMap m = roundTrip(new PrefixTree("ACTG"));
+		assertTrue(m.isEmpty());
+		assertEquals(0, m.countPrefixes());
+		assertNull(m.get(""));
+		assertEquals(0, m.countKeysMatchingPrefix(""));
+		assertTrue(m.getKeysMatchingPrefix("").isEmpty());
+	}
+	
+	@Test
+	public void testSameAsTree() throws IOException {
+		PrefixTree t = new PrefixTree("ACTG");
+		Random RNG = new Random(7);
+		String[] values = { "one", "two", "three", "" }; // shared, so the pool gets deduplicated
+		for (int i = 0; i < 5000; i++) {
+			char[] key = new char[RNG.nextInt(12)];
+			for (int j = 0; j < key.length; j++)
+				key[j] = "ACGT".charAt(RNG.nextInt(4));
+			t.put(new String(key), values[RNG.nextInt(values.length)]);
+		}
+		t.put("GATTACA", "a value of its own");
+		
+		MappedPrefixMap m = roundTrip(t);
+		assertEquals(t.size(), m.size());
+		assertEquals(t.countPrefixes(), m.countPrefixes());
+		assertEquals(t.sumKeyLengths(), m.sumKeyLengths());
+		assertEquals(t.getKeysMatchingPrefix(""), m.getKeysMatchingPrefix(""));
+		
+		for (String key : t.getKeysMatchingPrefix(""))
+			assertEquals(t.get(key), m.get(key));
+		for (String prefix : new String[] { "", "A", "GA", "GATT", "TTTTTTTTTTTTTT", "CAGT" }) {
+			assertEquals(t.get(prefix), m.get(prefix));
+			assertEquals(t.countKeysMatchingPrefix(prefix), m.countKeysMatchingPrefix(prefix));
+			assertEquals(t.getKeysMatchingPrefix(prefix), m.getKeysMatchingPrefix(prefix));
+		}
+	}
+	
+	@Test
+	public void testLargeAlphabet() throws IOException {
+		// more than 32 characters, so the child bitmap takes several words
+		StringBuilder sb = new StringBuilder();
+		for (char ch = ' '; ch <= '~'; ch++)
+			sb.append(ch);
+		PrefixTree t = new PrefixTree(sb.toString());
+		t.put("~~", "tildes");
+		t.put("~a", "a");
+		t.put("~ ", "space");
+		t.put("Hello, World!", "hi");
+		
+		MappedPrefixMap m = roundTrip(t);
+		assertEquals("tildes", m.get("~~"));
+		assertEquals("space", m.get("~ "));
+		assertEquals("hi", m.get("Hello, World!"));
+		assertNull(m.get("~"));
+		assertEquals(t.getKeysMatchingPrefix("~"), m.getKeysMatchingPrefix("~"));
+		assertEquals(3, m.countKeysMatchingPrefix("~"));
+	}
+	
+	@Test
+	public void testPoolLimit() throws IOException {
+		PrefixTree t = new PrefixTree("ACTG");
+		t.put("CAT", "meow"); // 4 + 2 * 4 bytes in the pool
+		t.put("GAT", "meow"); // same value, pooled once
+		t.put("TAG", "gat"); // 4 + 2 * 3
+		Path file = Files.createTempFile("prefix-tree", ".snapshot");
+		try {
+			MappedPrefixMap.write(t, file, 12 + 10); // just fits
+			assertEquals("gat", MappedPrefixMap.open(file).get("TAG"));
+			try {
+				MappedPrefixMap.write(t, file, 12 + 10 - 1);
+				fail();
+			} catch (IOException e) {}
+		} finally {
+			Files.delete(file);
+		}
+	}
+	
+	@Test
+	public void testReadOnly() throws IOException {
+		PrefixTree t = new PrefixTree("ACTG");
+		t.put("CAT", "meow");
+		MappedPrefixMap m = roundTrip(t);
+		try {
+			m.put("DOG", "woof");
+			fail();
+		} catch (UnsupportedOperationException e) {}
+		try {
+			m.remove("CAT");
+			fail();
+		} catch (UnsupportedOperationException e) {}
+		assertEquals("meow", m.get("CAT"));
+	}
+	
+	@Test(expected = MalformedKeyException.class)
+	public void testMalformedKey() throws IOException {
+		PrefixTree t = new PrefixTree("ACTG");
+		t.put("CAT", "meow");
+		roundTrip(t).get("CATX");
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testNullKey() throws IOException {
+		roundTrip(new PrefixTree("ACTG")).get(null);
+	}
+}
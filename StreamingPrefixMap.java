@@ -0,0 +1,26 @@
+import java.util.Map;
+import java.util.stream.Stream;
+
+/*
+ * A PrefixMap whose prefix queries can also be walked lazily, so callers that
+ * stop early (limit, findFirst, anyMatch...) never visit the rest of the
+ * subtrie and nothing is collected up front
+ */
+public interface StreamingPrefixMap extends PrefixMap {
+
+	/*
+	 * Same keys, in the same order, as getKeysMatchingPrefix but produced as
+	 * the stream is consumed. The stream splits at child boundaries so
+	 * .parallel() works on separate subtries
+	 * if the prefix contains any non-valid character, throw MalformedKeyException
+	 * (straight away, not when the stream is used)
+	 * if the prefix is null, throw IllegalArgumentException
+	 * The map must not be modified while the stream is in use
+	 */
+	public Stream<String> streamKeysMatchingPrefix(String prefix);
+
+	/*
+	 * Same as streamKeysMatchingPrefix but with the values as well
+	 */
+	public Stream<Map.Entry<String, String>> streamEntriesMatchingPrefix(String prefix);
+}
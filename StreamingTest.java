@@ -0,0 +1,81 @@
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+public class StreamingTest {
+	
+	private static StreamingPrefixMap bigTree(int n) {
+		Random RNG = new Random(42);
+		StreamingPrefixMap t = new PrefixTree("ACTG");
+		for (int i = 0; i < n; i++) {
+			StringBuilder sb = new StringBuilder();
+			for (int j = RNG.nextInt(20); j > 0; j--)
+				sb.append(NonDeterministicTest.BASES[RNG.nextInt(4)]);
+			t.put(sb.toString(), "v" + i);
+		}
+		return t;
+	}
+	
+	@Test
+	public void testSameAsList() {
+		StreamingPrefixMap t = bigTree(5000);
+		for (String prefix : Arrays.asList("", "A", "GA", "TTT", "CCCCCCCCCCCCCCCCCCCCC")) {
+			assertEquals(t.getKeysMatchingPrefix(prefix),
+					t.streamKeysMatchingPrefix(prefix).collect(Collectors.toList()));
+		}
+	}
+	
+	@Test
+	public void testEntries() {
+		StreamingPrefixMap t = new PrefixTree("ACTG");
+		assertNull(t.put("GAT", "a"));
+		assertNull(t.put("GATTACA", "b"));
+		assertNull(t.put("CAT", "c"));
+		
+		List<Map.Entry<String, String>> entries = 
+				t.streamEntriesMatchingPrefix("GA").collect(Collectors.toList());
+		assertEquals(2, entries.size());
+		assertEquals("GAT", entries.get(0).getKey());
+		assertEquals("a", entries.get(0).getValue());
+		assertEquals("GATTACA", entries.get(1).getKey());
+		assertEquals("b", entries.get(1).getValue());
+	}
+	
+	@Test
+	public void testEarlyTermination() {
+		StreamingPrefixMap t = bigTree(5000);
+		List<String> all = t.getKeysMatchingPrefix("C");
+		
+		assertEquals(all.subList(0, 10), t.streamKeysMatchingPrefix("C").limit(10).collect(Collectors.toList()));
+		assertEquals(all.get(0), t.streamKeysMatchingPrefix("C").findFirst().get());
+		assertFalse(t.streamKeysMatchingPrefix("AAAAAAAAAAAAAAAAAAAAAAAAAAAAA").findFirst().isPresent());
+	}
+	
+	@Test
+	public void testParallel() {
+		StreamingPrefixMap t = bigTree(20000);
+		for (String prefix : Arrays.asList("", "T", "AC")) {
+			assertEquals(t.getKeysMatchingPrefix(prefix),
+					t.streamKeysMatchingPrefix(prefix).parallel().collect(Collectors.toList()));
+			assertEquals(t.countKeysMatchingPrefix(prefix), t.streamKeysMatchingPrefix(prefix).parallel().count());
+		}
+	}
+	
+	@Test
+	public void testInvalidPrefix() {
+		StreamingPrefixMap t = new PrefixTree("ACTG");
+		try {
+			t.streamKeysMatchingPrefix("AZ");
+			fail("expected MalformedKeyException");
+		} catch (MalformedKeyException x) {}
+		try {
+			t.streamKeysMatchingPrefix(null);
+			fail("expected IllegalArgumentException");
+		} catch (IllegalArgumentException x) {}
+	}
+}
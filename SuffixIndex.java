@@ -0,0 +1,331 @@
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+
+/******************************************************************************
+ * Generalised suffix tree over a set of keys, for suffix and substring
+ * queries (see SuffixIndexedPrefixTree, which keeps one up to date)
+ *
+ * Every suffix of every key (the empty one too) is a path from the root,
+ * with the edges path compressed. A node remembers which keys have a suffix
+ * that ends exactly there:
+ *
+ *  keys GATTACA, ATTA      root {GATTACA, ATTA} (empty suffix)
+ *                           |
+ *                      "A" {GATTACA, ATTA}
+ *                        /       \
+ *                   "CA" ...    "TTA" {ATTA}   <- ATTA ends in ATTA, the
+ *                                  |              GATTACA suffix carries on
+ *                                "CA" {GATTACA}
+ *
+ *  - keys ending with X: the ones listed at the node where X ends, O(|X|)
+ *  - keys containing X: everything listed below where X ends, so the time
+ *    goes with the number of occurrences, not the number of keys
+ *
+ * Labels aren't copied, a node points at an occurrence of its path in one
+ * of the keys (key id, start). When that key goes the node is pointed at
+ * another key further down. Building is the straightforward way, each
+ * suffix walked from the root, which is O(L^2) per key. Fine for reads,
+ * not for whole chromosomes
+ ******************************************************************************/
+public class SuffixIndex {
+
+	private static final char[] NO_KEYS = new char[0];
+	private static final Node[] NO_CHILDREN = new Node[0];
+
+	private static final class Node {
+		/**********************************************
+		 * path from the root = key(keyId)[start, start + depth)
+		 * edge from the parent = the last edgeLength chars of it
+		 **********************************************/
+		int keyId, start, depth, edgeLength;
+		Node parent;
+		char[] keys = NO_KEYS; // first char of each child's edge, sorted
+		Node[] children = NO_CHILDREN;
+		IntHashSet ends = null; // keys with a suffix ending here
+		boolean removed = false;
+
+		Node(Node parent, int keyId, int start, int depth, int edgeLength) {
+			this.parent = parent;
+			this.keyId = keyId;
+			this.start = start;
+			this.depth = depth;
+			this.edgeLength = edgeLength;
+		}
+
+		Node getChild(char key) {
+			int i = Arrays.binarySearch(keys, key);
+			return i < 0 ? null : children[i];
+		}
+
+		void putChild(char key, Node child) {
+			int i = Arrays.binarySearch(keys, key);
+			if (i >= 0) {
+				children[i] = child;
+				return;
+			}
+			i = -i - 1;
+			char[] k = new char[keys.length + 1];
+			Node[] c = new Node[keys.length + 1];
+			System.arraycopy(keys, 0, k, 0, i);
+			System.arraycopy(keys, i, k, i + 1, keys.length - i);
+			System.arraycopy(children, 0, c, 0, i);
+			System.arraycopy(children, i, c, i + 1, keys.length - i);
+			k[i] = key;
+			c[i] = child;
+			keys = k;
+			children = c;
+		}
+
+		void removeChild(char key) {
+			int i = Arrays.binarySearch(keys, key);
+			char[] k = new char[keys.length - 1];
+			Node[] c = new Node[keys.length - 1];
+			System.arraycopy(keys, 0, k, 0, i);
+			System.arraycopy(keys, i + 1, k, i, k.length - i);
+			System.arraycopy(children, 0, c, 0, i);
+			System.arraycopy(children, i + 1, c, i, c.length - i);
+			keys = k;
+			children = c;
+		}
+
+		boolean hasEnds() { return ends != null && ends.size() > 0; }
+
+		void addEnd(int id) {
+			if (ends == null)
+				ends = new IntHashSet();
+			ends.add(id);
+		}
+	}
+
+	private final Alphabet alphabet;
+	private final Node root = new Node(null, -1, 0, 0, 0);
+	private final HashMap<String, Integer> ids = new HashMap<>();
+	private String[] keyOf = new String[16]; // key id -> key
+	private int[] freeIds = new int[16];
+	private int numFree = 0, nextId = 0;
+
+	public SuffixIndex(String validChars) { alphabet = new Alphabet(validChars); }
+
+	public int size() { return ids.size(); }
+
+	private char label(Node node, int i) {
+		return keyOf[node.keyId].charAt(node.start + node.depth - node.edgeLength + i);
+	}
+
+	/***************************************************************************
+	 * Updates
+	 ***************************************************************************/
+	/*
+	 * Adds the key, returns false if it was already there
+	 */
+	public boolean add(String key) {
+
+		alphabet.verify(key);
+		if (ids.containsKey(key))
+			return false;
+
+		int id = numFree > 0 ? freeIds[--numFree] : nextId++;
+		if (id == keyOf.length)
+			keyOf = Arrays.copyOf(keyOf, id * 2);
+		keyOf[id] = key;
+		ids.put(key, id);
+
+		for (int from = 0; from <= key.length(); from++)
+			addSuffix(id, key, from);
+		return true;
+	}
+
+	private void addSuffix(int id, String key, int from) {
+
+		int length = key.length() - from;
+		Node cur = root;
+		int i = 0; // chars of the suffix matched so far
+		while (i < length) {
+			char ch = key.charAt(from + i);
+			Node child = cur.getChild(ch);
+			if (child == null) {
+				Node leaf = new Node(cur, id, from, length, length - i);
+				leaf.addEnd(id);
+				cur.putChild(ch, leaf);
+				return;
+			}
+
+			int j = 0;
+			while (j < child.edgeLength && i + j < length && label(child, j) == key.charAt(from + i + j))
+				j++;
+
+			if (j < child.edgeLength) { // split the edge where the suffix leaves it (or ends)
+				Node mid = new Node(cur, child.keyId, child.start, i + j, j);
+				char next = label(child, j);
+				cur.putChild(ch, mid);
+				child.edgeLength -= j;
+				child.parent = mid;
+				mid.putChild(next, child);
+				child = mid;
+			}
+			cur = child;
+			i += j;
+		}
+		cur.addEnd(id);
+	}
+
+	/*
+	 * Takes the key out, returns false if it wasn't there
+	 */
+	public boolean remove(String key) {
+
+		alphabet.verify(key);
+		Integer boxed = ids.remove(key);
+		if (boxed == null)
+			return false;
+		int id = boxed;
+
+		// every suffix's node forgets the key first, so that nothing below still
+		// lists it when the nodes that point at it look for another key
+		Node[] ends = new Node[key.length() + 1];
+		for (int from = 0; from <= key.length(); from++) {
+			ends[from] = find(key, from, key.length());
+			ends[from].ends.remove(id);
+		}
+		for (Node end : ends)
+			cleanUp(end);
+		for (int from = 0; from < key.length(); from++)
+			repoint(id, key, from);
+
+		keyOf[id] = null;
+		if (numFree == freeIds.length)
+			freeIds = Arrays.copyOf(freeIds, numFree * 2);
+		freeIds[numFree++] = id;
+		return true;
+	}
+	/*
+	 * Drops the node if nothing ends at or below it any more, and merges it into
+	 * its child if it is just a bend in an edge now. Same for the parent after
+	 */
+	private void cleanUp(Node node) {
+
+		while (node != root && !node.removed && !node.hasEnds()) {
+			Node parent = node.parent;
+			char first = label(node, 0);
+			if (node.children.length == 0) {
+				parent.removeChild(first);
+				node.removed = true;
+				node = parent;
+			} else if (node.children.length == 1) {
+				Node child = node.children[0];
+				child.edgeLength += node.edgeLength;
+				child.parent = parent;
+				parent.putChild(first, child);
+				node.removed = true;
+				return;
+			} else {
+				return;
+			}
+		}
+	}
+	/*
+	 * Points the nodes along the suffix that still use the removed key at some
+	 * other key in their subtrie (they all have one, or they would be gone)
+	 */
+	private void repoint(int id, String key, int from) {
+
+		Node cur = root;
+		int i = 0, length = key.length() - from;
+		while (i < length) {
+			Node child = cur.getChild(key.charAt(from + i));
+			if (child == null)
+				return;
+			if (child.keyId == id) {
+				Node end = child;
+				while (!end.hasEnds())
+					end = end.children[0];
+				child.keyId = end.ends.any();
+				child.start = keyOf[child.keyId].length() - end.depth;
+			}
+			int j = 0;
+			while (j < child.edgeLength && i + j < length && label(child, j) == key.charAt(from + i + j))
+				j++;
+			if (j < child.edgeLength)
+				return;
+			cur = child;
+			i += j;
+		}
+	}
+
+	/***************************************************************************
+	 * Queries
+	 ***************************************************************************/
+	/*
+	 * Node where key[from, to) ends, or the node below if it ends inside an
+	 * edge, null if it isn't in the tree
+	 */
+	private Node find(String key, int from, int to) {
+
+		Node cur = root;
+		int i = from;
+		while (i < to) {
+			Node child = cur.getChild(key.charAt(i));
+			if (child == null)
+				return null;
+			int j = 0;
+			for (; j < child.edgeLength && i + j < to; j++)
+				if (label(child, j) != key.charAt(i + j))
+					return null;
+			cur = child;
+			i += j;
+		}
+		return cur;
+	}
+
+	private Node endOf(String suffix) {
+		alphabet.verify(suffix);
+		Node node = find(suffix, 0, suffix.length());
+		return node == null || node.depth != suffix.length() ? null : node; // has to end right at the node
+	}
+
+	public int countKeysMatchingSuffix(String suffix) {
+		Node node = endOf(suffix);
+		return node == null || node.ends == null ? 0 : node.ends.size();
+	}
+
+	public List<String> getKeysMatchingSuffix(String suffix) {
+		List<String> keys = new ArrayList<>();
+		Node node = endOf(suffix);
+		if (node != null && node.ends != null)
+			node.ends.forEach(id -> keys.add(keyOf[id]));
+		Collections.sort(keys);
+		return keys;
+	}
+
+	public List<String> getKeysContaining(String infix) {
+
+		alphabet.verify(infix);
+		List<String> keys = new ArrayList<>();
+		Node subtrie = find(infix, 0, infix.length());
+		if (subtrie == null)
+			return keys;
+
+		IntHashSet found = new IntHashSet(); // a key can contain it more than once
+		Node[] stack = new Node[16];
+		int top = 0;
+		stack[top++] = subtrie;
+		while (top > 0) {
+			Node cur = stack[--top];
+			if (cur.ends != null)
+				cur.ends.forEach(id -> {
+					if (found.add(id))
+						keys.add(keyOf[id]);
+				});
+			for (Node child : cur.children) {
+				if (top == stack.length)
+					stack = Arrays.copyOf(stack, top * 2);
+				stack[top++] = child;
+			}
+		}
+		Collections.sort(keys);
+		return keys;
+	}
+}
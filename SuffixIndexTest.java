@@ -0,0 +1,107 @@
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+public class SuffixIndexTest extends BasicTest {
+	
+	@Override
+	protected PrefixMap create() { return new SuffixIndexedPrefixTree("ACTG"); }
+	
+	@Test
+	public void testSuffixes() {
+		SuffixIndexedPrefixTree t = new SuffixIndexedPrefixTree("ACTG");
+		t.put("GATTACA", "movie");
+		t.put("ATTA", "x");
+		t.put("CA", "y");
+		t.put("", "empty");
+		
+		assertEquals(Arrays.asList("CA", "GATTACA"), t.getKeysMatchingSuffix("CA"));
+		assertEquals(3, t.countKeysMatchingSuffix("A"));
+		assertEquals(4, t.countKeysMatchingSuffix(""));
+		assertEquals(Arrays.asList(), t.getKeysMatchingSuffix("TT"));
+		assertEquals(0, t.countKeysMatchingSuffix("GGGGGGGGGGG"));
+	}
+	
+	@Test
+	public void testContaining() {
+		SuffixIndexedPrefixTree t = new SuffixIndexedPrefixTree("ACTG");
+		t.put("GATTACA", "movie");
+		t.put("ATTA", "x");
+		t.put("CA", "y");
+		
+		assertEquals(Arrays.asList("ATTA", "GATTACA"), t.getKeysContaining("TT"));
+		assertEquals(Arrays.asList("ATTA", "CA", "GATTACA"), t.getKeysContaining("A"));
+		assertEquals(Arrays.asList("GATTACA"), t.getKeysContaining("TAC"));
+		assertEquals(Arrays.asList(), t.getKeysContaining("TTT"));
+		
+		t.remove("GATTACA");
+		assertEquals(Arrays.asList("ATTA"), t.getKeysContaining("TT"));
+		assertEquals(Arrays.asList(), t.getKeysContaining("TAC"));
+		assertEquals(Arrays.asList("CA"), t.getKeysMatchingSuffix("CA"));
+	}
+	
+	@Test
+	public void testSameAsFiltering() {
+		SuffixIndexedPrefixTree t = new SuffixIndexedPrefixTree("ACTG");
+		Random RNG = new Random(17);
+		for (int i = 0; i < 6000; i++) {
+			char[] key = new char[RNG.nextInt(9)];
+			for (int j = 0; j < key.length; j++)
+				key[j] = "ACGT".charAt(RNG.nextInt(4));
+			if (RNG.nextInt(3) > 0)
+				t.put(new String(key), "v");
+			else
+				t.remove(new String(key));
+			
+			if (i % 500 == 0)
+				check(t, RNG);
+		}
+		check(t, RNG);
+		
+		// and the batches
+		Map<String, String> batch = new HashMap<>();
+		for (String key : t.getKeysMatchingPrefix("A"))
+			batch.put(key + "CC", "w");
+		t.putAll(batch);
+		check(t, RNG);
+		t.removeAll(t.getKeysMatchingPrefix("C"));
+		check(t, RNG);
+	}
+	
+	private static void check(SuffixIndexedPrefixTree t, Random RNG) {
+		List<String> all = t.getKeysMatchingPrefix("");
+		for (int q = 0; q < 20; q++) {
+			char[] chars = new char[RNG.nextInt(4)];
+			for (int j = 0; j < chars.length; j++)
+				chars[j] = "ACGT".charAt(RNG.nextInt(4));
+			String x = new String(chars);
+			
+			List<String> ending = new ArrayList<>(), containing = new ArrayList<>();
+			for (String key : all) {
+				if (key.endsWith(x))
+					ending.add(key);
+				if (key.contains(x))
+					containing.add(key);
+			}
+			assertEquals(ending, t.getKeysMatchingSuffix(x));
+			assertEquals(ending.size(), t.countKeysMatchingSuffix(x));
+			assertEquals(containing, t.getKeysContaining(x));
+		}
+	}
+	
+	@Test(expected = MalformedKeyException.class)
+	public void testMalformedInfix() {
+		new SuffixIndexedPrefixTree("ACTG").getKeysContaining("CAX");
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testNullSuffix() {
+		new SuffixIndexedPrefixTree("ACTG").getKeysMatchingSuffix(null);
+	}
+}
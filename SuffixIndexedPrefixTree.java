@@ -0,0 +1,81 @@
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+
+/******************************************************************************
+ * PrefixTree that also answers suffix and substring queries, from a
+ * SuffixIndex that is kept up to date with the keys
+ *
+ * Costs O(L^2) extra per put or remove of a new key (see SuffixIndex), values
+ * only live in the tree so replacing one costs nothing extra
+ ******************************************************************************/
+public class SuffixIndexedPrefixTree extends PrefixTree {
+	
+	private final SuffixIndex suffixes;
+	
+	public SuffixIndexedPrefixTree(String validChars) {
+		super(validChars);
+		suffixes = new SuffixIndex(validChars);
+	}
+	
+	public SuffixIndexedPrefixTree() { this("ACGT"); }
+	
+	@Override
+	public String put(String key, String value) {
+		String prev = super.put(key, value);
+		if (prev == null)
+			suffixes.add(key);
+		return prev;
+	}
+	@Override
+	public String remove(String key) {
+		String prev = super.remove(key);
+		if (prev != null)
+			suffixes.remove(key);
+		return prev;
+	}
+	
+	/*
+	 * compute, merge and the rest all come through here
+	 */
+	@Override
+	String update(String key, BiFunction<? super String, ? super String, ? extends String> f, boolean returnOld) {
+		boolean had = get(key) != null;
+		String result = super.update(key, f, returnOld);
+		boolean has = get(key) != null;
+		if (has && !had)
+			suffixes.add(key);
+		else if (had && !has)
+			suffixes.remove(key);
+		return result;
+	}
+	
+	@Override
+	public void putAll(Map<String, String> entries) {
+		super.putAll(entries);
+		for (String key : entries.keySet())
+			suffixes.add(key); // no-op for the ones that were there
+	}
+	@Override
+	public List<String> removeAll(Collection<String> keys) {
+		List<String> prev = super.removeAll(keys);
+		int i = 0;
+		for (String key : keys)
+			if (prev.get(i++) != null)
+				suffixes.remove(key);
+		return prev;
+	}
+	
+	/*
+	 * Same rules as the prefix versions:
+	 * if the suffix/infix contains any non-valid character, throw MalformedKeyException
+	 * if it is null, throw IllegalArgumentException
+	 * the lists are sorted
+	 */
+	public int countKeysMatchingSuffix(String suffix) { return suffixes.countKeysMatchingSuffix(suffix); }
+	
+	public List<String> getKeysMatchingSuffix(String suffix) { return suffixes.getKeysMatchingSuffix(suffix); }
+	
+	public List<String> getKeysContaining(String infix) { return suffixes.getKeysContaining(infix); }
+}
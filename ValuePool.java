@@ -0,0 +1,88 @@
+import java.util.Arrays;
+import java.util.HashMap;
+
+/******************************************************************************
+ * Dictionary of String values, each distinct value is kept once and known
+ * by a small int id
+ *
+ *  ids : value -> id          values : id -> value, refs : id -> users
+ *   "exon"   -> 0              ___________ ___________ _______
+ *   "intron" -> 1             | "exon"  3 | "intron" 1|  ...  |
+ *                             |___________|___________|_______|
+ *
+ * Every intern() is a reference that release() gives back, and a value
+ * with no references left is dropped and its id reused. So a map only has
+ * to hold the id (see InterningPrefixMap) and a few thousand annotations
+ * over millions of keys cost a few thousand Strings.
+ *
+ * One pool can be shared by any number of maps. Like the maps it isn't
+ * thread safe, maps sharing a pool have to be used from one thread at a time
+ ******************************************************************************/
+public class ValuePool {
+
+	private final HashMap<String, Integer> ids = new HashMap<>();
+	private String[] values = new String[16];
+	private int[] refs = new int[16];
+	private int[] freeIds = new int[16];
+	private int numFree = 0, nextId = 0;
+
+	/*
+	 * Distinct values in the pool
+	 */
+	public int size() { return ids.size(); }
+
+	/*
+	 * Id of the value (adding it if it is new), counts as one more reference
+	 * if the value is null, throw IllegalArgumentException
+	 */
+	public int intern(String value) {
+
+		if (value == null) throw new IllegalArgumentException();
+		Integer known = ids.get(value);
+		if (known != null) {
+			refs[known]++;
+			return known;
+		}
+
+		int id = numFree > 0 ? freeIds[--numFree] : nextId++;
+		if (id == values.length) {
+			values = Arrays.copyOf(values, id * 2);
+			refs = Arrays.copyOf(refs, id * 2);
+		}
+		values[id] = value;
+		refs[id] = 1;
+		ids.put(value, id);
+		return id;
+	}
+
+	/*
+	 * The value with the id, the same String object for as long as it is in the pool
+	 */
+	public String get(int id) {
+		if (id < 0 || id >= nextId || values[id] == null) throw new IllegalArgumentException("unknown id " + id);
+		return values[id];
+	}
+
+	/*
+	 * Gives back one reference, the value goes when it was the last one
+	 */
+	public void release(int id) {
+
+		String value = get(id);
+		if (--refs[id] > 0)
+			return;
+		ids.remove(value);
+		values[id] = null;
+		if (numFree == freeIds.length)
+			freeIds = Arrays.copyOf(freeIds, numFree * 2);
+		freeIds[numFree++] = id;
+	}
+
+	/*
+	 * References to the value's id, 0 if it isn't in the pool
+	 */
+	public int references(String value) {
+		Integer id = ids.get(value);
+		return id == null ? 0 : refs[id];
+	}
+}
@@ -0,0 +1,57 @@
+package prefixtree;
+
+import java.util.AbstractMap.SimpleEntry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/******************************************************************************
+ * PrefixTree.build against a loop of puts (PrefixMapBenchmark.put), same
+ * keys, sorted and unsorted (sorted input is built in one linear pass)
+ ******************************************************************************/
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = { "-Xms2g", "-Xmx2g" })
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class BulkLoadBenchmark {
+
+	@Param({ "reads", "kmers" })
+	public String workload;
+
+	@Param({ "10000", "1000000" })
+	public int size;
+
+	@Param({ "false", "true" })
+	public boolean sorted;
+
+	List<Map.Entry<String, String>> entries;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		entries = new ArrayList<>(size);
+		for (String key : Workloads.keys(workload, size, new Random(42)))
+			entries.add(new SimpleEntry<>(key, key));
+		if (sorted)
+			entries.sort(Map.Entry.comparingByKey());
+	}
+
+	@Benchmark
+	public PrefixTree build() { return PrefixTree.build(Workloads.DNA, entries); }
+}
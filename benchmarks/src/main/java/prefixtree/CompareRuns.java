@@ -0,0 +1,85 @@
+package prefixtree;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/******************************************************************************
+ * Regressions between two runs of the suite saved with -rf csv
+ *
+ *   java -cp benchmarks/target/benchmarks.jar prefixtree.CompareRuns old.csv new.csv [threshold]
+ *
+ * Only the per op scores are compared (time per op, and bytes per op from
+ * -prof gc), lines match on benchmark, mode, unit and params. Anything more
+ * than threshold (a fraction, 0.15 by default) worse than before is printed,
+ * the exit status is 1 if there was any
+ ******************************************************************************/
+public class CompareRuns {
+
+	public static void main(String[] args) throws IOException {
+
+		if (args.length < 2) {
+			System.err.println("usage: CompareRuns old.csv new.csv [threshold]");
+			System.exit(2);
+		}
+		double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 0.15;
+		Map<String, Double> before = read(args[0]), after = read(args[1]);
+
+		int regressions = 0;
+		for (Map.Entry<String, Double> now : after.entrySet()) {
+			Double old = before.get(now.getKey());
+			if (old != null && old > 0 && now.getValue() > old * (1 + threshold)) {
+				System.out.printf("REGRESSION %s: %.3f -> %.3f (+%.0f%%)%n", now.getKey(), old, now.getValue(),
+						100 * (now.getValue() - old) / old);
+				regressions++;
+			}
+		}
+		System.exit(regressions > 0 ? 1 : 0);
+	}
+
+	/*
+	 * "benchmark mode unit params..." -> score, for the lines in units per op
+	 */
+	static Map<String, Double> read(String file) throws IOException {
+
+		List<String> lines = Files.readAllLines(Paths.get(file));
+		List<String> header = fields(lines.get(0));
+		int score = header.indexOf("Score"), unit = header.indexOf("Unit");
+		if (score < 0 || unit < 0) throw new IOException(file + " is not a JMH csv");
+
+		Map<String, Double> scores = new HashMap<>();
+		for (String line : lines.subList(1, lines.size())) {
+			List<String> fields = fields(line);
+			if (fields.size() != header.size() || !fields.get(unit).endsWith("/op"))
+				continue;
+			StringBuilder key = new StringBuilder(fields.get(0)).append(' ').append(fields.get(1)).append(' ').append(fields.get(unit));
+			for (int i = unit + 1; i < fields.size(); i++)
+				key.append(' ').append(fields.get(i));
+			scores.put(key.toString(), Double.parseDouble(fields.get(score)));
+		}
+		return scores;
+	}
+
+	private static List<String> fields(String line) {
+
+		List<String> fields = new ArrayList<>();
+		StringBuilder field = new StringBuilder();
+		boolean quoted = false;
+		for (int i = 0; i < line.length(); i++) {
+			char ch = line.charAt(i);
+			if (ch == '"')
+				quoted = !quoted;
+			else if (ch == ',' && !quoted) {
+				fields.add(field.toString());
+				field.setLength(0);
+			} else
+				field.append(ch);
+		}
+		fields.add(field.toString());
+		return fields;
+	}
+}
@@ -0,0 +1,80 @@
+package prefixtree;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/******************************************************************************
+ * getKeysMatchingPrefix("") on a few very long keys (long reads), against
+ * the recursive walk PrefixTree used to have (one call per character,
+ * appending to and deleting from a StringBuilder)
+ *
+ *   java -jar target/benchmarks.jar DeepKeysBenchmark
+ *
+ * The recursive one needs the big stack the fork gets, with the default
+ * one it throws StackOverflowError at these lengths (-jvmArgsAppend -Xss1m)
+ ******************************************************************************/
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = { "-Xms2g", "-Xmx2g", "-Xss1g" })
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DeepKeysBenchmark {
+
+	@Param({ "20" })
+	public int keys;
+
+	@Param({ "100000" })
+	public int length;
+
+	PrefixTree tree;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		Random RNG = new Random(42);
+		tree = new PrefixTree(Workloads.DNA);
+		char[] key = new char[length];
+		for (int i = 0; i < keys; i++) {
+			for (int j = 0; j < length; j++)
+				key[j] = Workloads.DNA.charAt(RNG.nextInt(4));
+			tree.put(new String(key), "v");
+		}
+	}
+
+	@Benchmark
+	public List<String> iterative() { return tree.getKeysMatchingPrefix(""); }
+
+	@Benchmark
+	public List<String> recursive() {
+		List<String> keys = new ArrayList<>();
+		preOrderKeys(tree.root(), new StringBuilder(), keys);
+		return keys;
+	}
+
+	private static void preOrderKeys(PrefixTree.Node subtrie, StringBuilder curKey, List<String> keys) {
+
+		if (subtrie.getValue() != null)
+			keys.add(curKey.toString());
+
+		for (PrefixTree.Node child = subtrie.nextChild(0); child != null; child = child.nextSibling()) {
+			curKey.append(child.key);
+			preOrderKeys(child, curKey, keys);
+			curKey.deleteCharAt(curKey.length() - 1);
+		}
+	}
+}
@@ -0,0 +1,66 @@
+package prefixtree;
+
+import java.util.Random;
+
+/******************************************************************************
+ * Heap used by a PrefixTree per node, for a few alphabet sizes
+ *
+ *   java -cp benchmarks/target/benchmarks.jar prefixtree.MemoryBenchmark [keys per alphabet]
+ *
+ * Keys are random with random lengths, so the top of the tree is dense and
+ * the rest is mostly chains, the same shape as real reads. Run with a fixed
+ * -Xmx (and nothing else going on) for numbers that compare across runs
+ ******************************************************************************/
+public class MemoryBenchmark {
+
+	static final String DNA = "ACGT",
+			AMINO_ACIDS = "ACDEFGHIKLMNPQRSTVWY",
+			PRINTABLE_ASCII = printableAscii();
+
+	public static void main(String[] args) {
+		int keys = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+
+		System.out.println("alphabet  keys      nodes      bytes/node  bytes/key");
+		for (String alphabet : new String[] { DNA, AMINO_ACIDS, PRINTABLE_ASCII }) {
+			long before = usedHeap();
+			PrefixTree tree = fill(new PrefixTree(alphabet), alphabet, keys, new Random(42));
+			long bytes = usedHeap() - before;
+
+			int nodes = tree.countPrefixes() + 1;
+			System.out.printf("%-9d %-9d %-10d %-11.1f %.1f%n", alphabet.length(), tree.size(), nodes,
+					(double) bytes / nodes, (double) bytes / tree.size());
+		}
+	}
+
+	static PrefixTree fill(PrefixTree tree, String alphabet, int keys, Random RNG) {
+		String value = "v"; // the same value everywhere, this is about the nodes
+		char[] key = new char[30];
+		for (int i = 0; i < keys; i++) {
+			int length = 10 + RNG.nextInt(key.length - 10);
+			for (int j = 0; j < length; j++)
+				key[j] = alphabet.charAt(RNG.nextInt(alphabet.length()));
+			tree.put(new String(key, 0, length), value);
+		}
+		return tree;
+	}
+
+	static long usedHeap() {
+		Runtime rt = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+			try {
+				Thread.sleep(100);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		return rt.totalMemory() - rt.freeMemory();
+	}
+
+	private static String printableAscii() {
+		StringBuilder sb = new StringBuilder();
+		for (char ch = ' '; ch <= '~'; ch++)
+			sb.append(ch);
+		return sb.toString();
+	}
+}
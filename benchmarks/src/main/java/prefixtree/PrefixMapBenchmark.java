@@ -0,0 +1,141 @@
+package prefixtree;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/******************************************************************************
+ * Time (and with -prof gc, allocation) per operation for the PrefixMaps, on
+ * the DNA workloads (see Workloads)
+ *
+ *   java -jar target/benchmarks.jar -prof gc -p size=10000,1000000 -rf csv -rff run.csv
+ *
+ * and CompareRuns against the csv of an earlier run to catch regressions.
+ * -p map= takes any of MAPS, the default is the two the rest are compared to
+ *
+ * Queries are per op on a map filled with all the keys, cycling through the
+ * keys (and 8 character prefixes of them). Writes change the map, so they
+ * are timed as a whole pass over the keys, single shot on a fresh (or
+ * filled) map each time. BulkLoadBenchmark has PrefixTree.build
+ *
+ * size goes up to 10^8, give the forks the heap for it (-jvmArgs -Xmx..)
+ ******************************************************************************/
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = { "-Xms2g", "-Xmx2g" })
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class PrefixMapBenchmark {
+
+	static final Map<String, Supplier<PrefixMap>> MAPS = new LinkedHashMap<>();
+	static {
+		MAPS.put("PrefixTree", () -> new PrefixTree(Workloads.DNA));
+		MAPS.put("HMbasedPrefixMap", () -> new HMbasedPrefixMap(Workloads.DNA));
+		MAPS.put("RadixTree", () -> new RadixTree(Workloads.DNA));
+		MAPS.put("OffHeapPrefixTree", () -> new OffHeapPrefixTree(Workloads.DNA));
+	}
+
+	@Param({ "PrefixTree", "HMbasedPrefixMap" })
+	public String map;
+
+	@Param({ "reads", "kmers" })
+	public String workload;
+
+	@Param({ "10000", "1000000" })
+	public int size;
+
+	String[] keys, prefixes;
+	PrefixMap filled;
+	int next = 0;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		keys = Workloads.keys(workload, size, new Random(42));
+		prefixes = new String[Math.min(keys.length, 1000)];
+		for (int i = 0; i < prefixes.length; i++)
+			prefixes[i] = keys[i * (keys.length / prefixes.length)].substring(0, 8);
+		filled = load(MAPS.get(map).get());
+	}
+
+	PrefixMap load(PrefixMap map) {
+		for (String key : keys)
+			map.put(key, key);
+		return map;
+	}
+
+	/***************************************************************************
+	 * Queries, per op
+	 ***************************************************************************/
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	public String get() { return filled.get(keys[next++ % keys.length]); }
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	public int countKeysMatchingPrefix() { return filled.countKeysMatchingPrefix(prefixes[next++ % prefixes.length]); }
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	public List<String> getKeysMatchingPrefix() { return filled.getKeysMatchingPrefix(prefixes[next++ % prefixes.length]); }
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	public int countPrefixes() { return filled.countPrefixes(); }
+
+	/***************************************************************************
+	 * Writes, a whole pass over the keys each. The maps come from their own
+	 * states so the per op benchmarks above don't pay for the set up
+	 ***************************************************************************/
+	@State(Scope.Thread)
+	public static class Empty {
+		PrefixMap map;
+
+		@Setup(Level.Invocation)
+		public void create(PrefixMapBenchmark benchmark) { map = MAPS.get(benchmark.map).get(); }
+	}
+
+	@State(Scope.Thread)
+	public static class Full {
+		PrefixMap map;
+
+		@Setup(Level.Invocation)
+		public void fill(PrefixMapBenchmark benchmark) { map = benchmark.load(MAPS.get(benchmark.map).get()); }
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	@Warmup(iterations = 5)
+	@Measurement(iterations = 10)
+	public PrefixMap put(Empty empty) { return load(empty.map); }
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	@Warmup(iterations = 5)
+	@Measurement(iterations = 10)
+	public PrefixMap remove(Full full) {
+		for (String key : keys)
+			full.map.remove(key);
+		return full.map;
+	}
+}
@@ -0,0 +1,42 @@
+package prefixtree;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/******************************************************************************
+ * Keys for the benchmarks, all drawn from one random genome so they share
+ * prefixes the way real data does:
+ *  - reads: 100-150 bases from random positions, 1% substitution errors
+ *  - kmers: every 21-mer from a stretch of the genome (lots of overlap)
+ ******************************************************************************/
+final class Workloads {
+
+	static final String DNA = "ACGT";
+	static final int READ_MIN = 100, READ_MAX = 150, K = 21;
+
+	private Workloads() {}
+
+	static String[] keys(String workload, int n, Random RNG) {
+
+		if (!workload.equals("reads") && !workload.equals("kmers")) throw new IllegalArgumentException("unknown workload " + workload);
+		char[] genome = new char[Math.max(1 << 16, Math.min(n, 1 << 26))];
+		for (int i = 0; i < genome.length; i++)
+			genome[i] = DNA.charAt(RNG.nextInt(4));
+
+		String[] keys = new String[n];
+		for (int i = 0; i < n; i++) {
+			if (workload.equals("kmers")) {
+				keys[i] = new String(genome, i % (genome.length - K), K);
+				continue;
+			}
+			int length = READ_MIN + RNG.nextInt(READ_MAX - READ_MIN + 1),
+					start = RNG.nextInt(genome.length - length);
+			char[] read = Arrays.copyOfRange(genome, start, start + length);
+			for (int j = 0; j < length; j++)
+				if (RNG.nextInt(100) == 0)
+					read[j] = DNA.charAt(RNG.nextInt(4));
+			keys[i] = new String(read);
+		}
+		return keys;
+	}
+}